@@ -0,0 +1,144 @@
+package com.tomgibara.perfect.benchmarks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.perfect.Minimal;
+import com.tomgibara.perfect.MinimalMap;
+import com.tomgibara.perfect.MinimalSet;
+import com.tomgibara.perfect.Perfect;
+
+// compares minimal sets and maps with their java.util counterparts; keys are
+// accessed in a shuffled order, and absent keys are drawn from outside the domain;
+// additions are measured by populating an empty set with every key
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CollectionsBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	int size;
+
+	private String[] keys;
+	private String[] absent;
+	private int index;
+
+	private Minimal<String> minimal;
+	private MinimalSet<String> minimalSet;
+	private Set<String> hashSet;
+	private MinimalMap<String, Integer> minimalMap;
+	private Map<String, Integer> hashMap;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> values = Data.strings(size, Data.SEED);
+		minimal = Perfect.over(values).using(3, Data.random()).perfect(Data.STRING_SERIALIZER).minimized();
+		keys = Data.shuffled(values, Data.SEED).toArray(new String[size]);
+		absent = Data.shuffled(Data.absentStrings(size, Data.SEED), Data.SEED).toArray(new String[size]);
+
+		minimalSet = minimal.newSet();
+		minimalSet.fill();
+		hashSet = new HashSet<>(values);
+
+		minimalMap = minimal.mapsToTypedStorage(Integer.class).newMap();
+		hashMap = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			minimalMap.put(values.get(i), i);
+			hashMap.put(values.get(i), i);
+		}
+	}
+
+	@Benchmark
+	public boolean minimalSetContains() {
+		return minimalSet.contains(nextKey());
+	}
+
+	@Benchmark
+	public boolean hashSetContains() {
+		return hashSet.contains(nextKey());
+	}
+
+	@Benchmark
+	public boolean minimalSetContainsAbsent() {
+		return minimalSet.contains(nextAbsent());
+	}
+
+	@Benchmark
+	public boolean hashSetContainsAbsent() {
+		return hashSet.contains(nextAbsent());
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Set<String> minimalSetAdd() {
+		Set<String> set = minimal.newSet();
+		for (String key : keys) {
+			set.add(key);
+		}
+		return set;
+	}
+
+	// presized so that, like the minimal set, no resizing is measured
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Set<String> hashSetAdd() {
+		Set<String> set = new HashSet<>(size * 4 / 3 + 1);
+		for (String key : keys) {
+			set.add(key);
+		}
+		return set;
+	}
+
+	@Benchmark
+	public Integer minimalMapGet() {
+		return minimalMap.get(nextKey());
+	}
+
+	@Benchmark
+	public Integer hashMapGet() {
+		return hashMap.get(nextKey());
+	}
+
+	@Benchmark
+	public Integer minimalMapPut() {
+		return minimalMap.put(nextKey(), index);
+	}
+
+	@Benchmark
+	public Integer hashMapPut() {
+		return hashMap.put(nextKey(), index);
+	}
+
+	private String nextKey() {
+		String key = keys[index];
+		if (++index == keys.length) index = 0;
+		return key;
+	}
+
+	private String nextAbsent() {
+		String key = absent[index];
+		if (++index == absent.length) index = 0;
+		return key;
+	}
+
+}
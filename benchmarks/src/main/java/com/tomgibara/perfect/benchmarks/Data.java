@@ -0,0 +1,60 @@
+package com.tomgibara.perfect.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import com.tomgibara.streams.StreamSerializer;
+
+// reproducible data for benchmarks: the same seed always yields the same values
+final class Data {
+
+	static final long SEED = 0x5eedL;
+
+	static final StreamSerializer<String> STRING_SERIALIZER = (s, w) -> w.writeChars(s);
+
+	// distinct strings resembling identifiers of between 8 and 24 characters
+	static List<String> strings(int size, long seed) {
+		SplittableRandom r = new SplittableRandom(seed);
+		Set<String> set = new LinkedHashSet<>(size * 2);
+		StringBuilder sb = new StringBuilder();
+		while (set.size() < size) {
+			sb.setLength(0);
+			int length = 8 + r.nextInt(17);
+			for (int i = 0; i < length; i++) {
+				sb.append((char) ('a' + r.nextInt(26)));
+			}
+			set.add(sb.toString());
+		}
+		return new ArrayList<>(set);
+	}
+
+	// strings that are absent from the list produced with the same size and seed
+	static List<String> absentStrings(int size, long seed) {
+		List<String> strings = strings(size, seed);
+		List<String> absent = new ArrayList<>(size);
+		for (String s : strings) {
+			absent.add(s + '#');
+		}
+		return absent;
+	}
+
+	// the values in a reproducible shuffled order
+	static <T> List<T> shuffled(List<T> values, long seed) {
+		List<T> list = new ArrayList<>(values);
+		Collections.shuffle(list, new Random(seed));
+		return list;
+	}
+
+	// a reproducible source of randomness for construction
+	static Random random() {
+		return new Random(SEED);
+	}
+
+	private Data() { }
+
+}
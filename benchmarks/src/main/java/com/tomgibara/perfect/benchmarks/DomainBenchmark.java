@@ -0,0 +1,59 @@
+package com.tomgibara.perfect.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.Perfect;
+import com.tomgibara.perfect.PerfectDomain;
+
+// measures the time taken to test hashes and serializers over a domain
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DomainBenchmark {
+
+	@Param({"100000", "1000000"})
+	int size;
+
+	@Param({"false", "true"})
+	boolean parallel;
+
+	private PerfectDomain<String> domain;
+	private Hasher<String> hasher;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> values = Data.strings(size, Data.SEED);
+		domain = Perfect.over(values);
+		if (parallel) domain = domain.parallel();
+		hasher = domain.using(3, Data.random()).perfect(Data.STRING_SERIALIZER).getHasher();
+	}
+
+	@Benchmark
+	public boolean isPerfect() {
+		return domain.isPerfect(hasher);
+	}
+
+	@Benchmark
+	public boolean isInjective() {
+		return domain.isInjective(Data.STRING_SERIALIZER);
+	}
+
+}
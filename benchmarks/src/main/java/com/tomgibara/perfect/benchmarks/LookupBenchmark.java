@@ -0,0 +1,62 @@
+package com.tomgibara.perfect.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.Perfect;
+
+// measures the latency of minimal hash lookups; with hot access, a small
+// working set of keys is repeatedly hashed so that the key data and the
+// relevant parts of the hash remain in cache, with cold access the keys of a
+// large domain are hashed in a shuffled order
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LookupBenchmark {
+
+	private static final int HOT_KEYS = 1024;
+
+	@Param({"1000", "1000000", "10000000"})
+	int size;
+
+	@Param({"hot", "cold"})
+	String access;
+
+	private Hasher<String> hasher;
+	private String[] keys;
+	private int index;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> values = Data.strings(size, Data.SEED);
+		hasher = Perfect.over(values).using(3, Data.random()).perfect(Data.STRING_SERIALIZER).minimized().getHasher();
+		List<String> shuffled = Data.shuffled(values, Data.SEED);
+		if (access.equals("hot")) shuffled = shuffled.subList(0, Math.min(HOT_KEYS, size));
+		keys = shuffled.toArray(new String[shuffled.size()]);
+	}
+
+	@Benchmark
+	public int intHashValue() {
+		String key = keys[index];
+		if (++index == keys.length) index = 0;
+		return hasher.intHashValue(key);
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.tomgibara.perfect.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.perfect.Perfect;
+
+// measures the time taken to find a perfect hash over a domain
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SeedSearchBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	int size;
+
+	private List<String> values;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		values = Data.strings(size, Data.SEED);
+	}
+
+	@Benchmark
+	public Perfect<String> perfect() {
+		return Perfect.over(values).using(3, Data.random()).perfect(Data.STRING_SERIALIZER);
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.tomgibara.perfect.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import com.tomgibara.perfect.ConstructionObserver;
+
+/**
+ * <p>
+ * An observer that records construction events with Java Flight Recorder, so
+ * that construction times can be monitored in production and regressions
+ * alerted upon. The events are all in the "Perfect Hashing" category and are
+ * named with the prefix {@code com.tomgibara.perfect}; they may be enabled and
+ * configured like any other JFR event.
+ *
+ * <p>
+ * This class requires a JVM that provides the {@code jdk.jfr} API (Java 11 or
+ * later, or Java 8 from update 262), and so is packaged separately from the
+ * library, which has no such dependency. An attempt event spans the attempt
+ * it records, from its start to its success or failure; attempts are tracked
+ * per thread, so instances may be shared freely.
+ *
+ * @author Tom Gibara
+ */
+
+public final class JfrConstructionObserver implements ConstructionObserver {
+
+	// statics
+
+	private static final String CATEGORY = "Perfect Hashing";
+
+	// fields
+
+	// the attempt in progress on each thread, indexed by phase
+	private final ThreadLocal<AttemptEvent[]> attempts = ThreadLocal.withInitial(() -> new AttemptEvent[Phase.values().length]);
+
+	// methods
+
+	@Override
+	public void attemptStarted(Phase phase, int attempt) {
+		AttemptEvent event = new AttemptEvent();
+		if (event.isEnabled()) {
+			event.phase = phase.name();
+			event.attempt = attempt;
+			event.begin();
+			attempts.get()[phase.ordinal()] = event;
+		}
+	}
+
+	@Override
+	public void attemptFailed(Phase phase, int attempt, Failure failure) {
+		AttemptEvent event = finished(phase, attempt);
+		if (event != null) {
+			event.failure = failure.name();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void attemptSucceeded(Phase phase, int attempt) {
+		AttemptEvent event = finished(phase, attempt);
+		if (event != null) {
+			event.commit();
+		}
+	}
+
+	@Override
+	public void graphBuilt(int vertices, int edges) {
+		GraphEvent event = new GraphEvent();
+		if (event.isEnabled()) {
+			event.vertices = vertices;
+			event.edges = edges;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void criticalNodesFound(int count) {
+		CriticalNodesEvent event = new CriticalNodesEvent();
+		if (event.isEnabled()) {
+			event.count = count;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void phaseCompleted(Phase phase, long durationNanos, long allocatedBytes) {
+		PhaseEvent event = new PhaseEvent();
+		if (event.isEnabled()) {
+			event.phase = phase.name();
+			event.phaseDuration = durationNanos;
+			event.allocated = allocatedBytes;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void uniquenessChecked(Phase phase, int passes, boolean unique) {
+		UniquenessEvent event = new UniquenessEvent();
+		if (event.isEnabled()) {
+			event.phase = phase.name();
+			event.passes = passes;
+			event.unique = unique;
+			event.commit();
+		}
+	}
+
+	// private utility methods
+
+	// null if the attempt was not started on this thread while recording was enabled
+	private AttemptEvent finished(Phase phase, int attempt) {
+		AttemptEvent[] events = attempts.get();
+		AttemptEvent event = events[phase.ordinal()];
+		if (event == null || event.attempt != attempt) return null;
+		events[phase.ordinal()] = null;
+		return event;
+	}
+
+	// inner classes
+
+	@Name("com.tomgibara.perfect.Attempt")
+	@Label("Construction Attempt")
+	@Description("An attempt to find a perfect or minimal hash")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class AttemptEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Attempt")
+		int attempt;
+
+		@Label("Failure")
+		@Description("The reason the attempt failed, or null if it succeeded")
+		String failure;
+
+	}
+
+	@Name("com.tomgibara.perfect.Graph")
+	@Label("Graph Built")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class GraphEvent extends Event {
+
+		@Label("Vertices")
+		int vertices;
+
+		@Label("Edges")
+		int edges;
+
+	}
+
+	@Name("com.tomgibara.perfect.CriticalNodes")
+	@Label("Critical Nodes Found")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class CriticalNodesEvent extends Event {
+
+		@Label("Count")
+		int count;
+
+	}
+
+	@Name("com.tomgibara.perfect.Phase")
+	@Label("Construction Phase")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Phase Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long phaseDuration;
+
+		@Label("Allocated")
+		@Description("Bytes allocated during the phase, or -1 if unknown")
+		@DataAmount
+		long allocated;
+
+	}
+
+	@Name("com.tomgibara.perfect.Uniqueness")
+	@Label("Uniqueness Check")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class UniquenessEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Passes")
+		int passes;
+
+		@Label("Unique")
+		boolean unique;
+
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.tomgibara.perfect;
+
+import java.util.Collection;
+import java.util.Random;
+
+import com.tomgibara.hashing.HashCode;
+import com.tomgibara.hashing.HashSize;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.ConstructionContext.Timing;
+import com.tomgibara.perfect.ConstructionObserver.Failure;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.perfect.Fuse.Peeling;
+
+// BDZ implementation based on:
+// Botelho, Pagh & Ziviani, "Simple and Space-Efficient Minimal Perfect Hash Functions"
+// each value is an edge of a 3-uniform hypergraph (laid out as a binary fuse);
+// peeling the hypergraph chooses a distinct vertex for each value, which is
+// recorded with a 2-bit value per vertex, and the chosen vertices are ranked
+// to produce a minimal hash
+final class BDZ<E> {
+
+	// statics
+
+	// the number of 2-bit vertex values in a long
+	private static final int VALUES_PER_WORD = 32;
+	// the number of words for which a rank is recorded
+	private static final int WORDS_PER_RANK = 8;
+	private static final long LOW_BITS = 0x5555555555555555L;
+
+	// the number of chosen vertices in the word, considering only those below the limit
+	private static int chosen(long word, int limit) {
+		long unused = word & word >>> 1 & LOW_BITS;
+		if (limit < VALUES_PER_WORD) unused |= -1L << (limit << 1) & LOW_BITS;
+		return VALUES_PER_WORD - Long.bitCount(unused);
+	}
+
+	// fields
+
+	private final Hasher<E> hasher;
+	private final int maxTries;
+	private final Random random;
+	private final ConstructionContext context;
+	private int attempts = 0;
+
+	// constructors
+
+	BDZ(Hasher<E> hasher, int maxTries, Random random, ConstructionContext context) {
+		this.hasher = hasher;
+		this.maxTries = maxTries;
+		this.random = random;
+		this.context = context;
+	}
+
+	// the number of attempts made by the last call to create
+	int getAttempts() {
+		return attempts;
+	}
+
+	Hasher<E> create(Collection<? extends E> elements) {
+		int size = elements.size();
+		// the hash values are distinct because the hasher is perfect over the elements
+		long[] keys = new long[size];
+		int index = 0;
+		for (E element : elements) {
+			keys[index++] = hasher.longHashValue(element);
+		}
+		Fuse fuse = Fuse.forSize(size);
+		// keys, hashes, peeling order and vertex values
+		context.checkMemory(Phase.MINIMIZATION, 0, size * (8L + 8L + 4L + 1L) + fuse.arrayLength * (4L + 4L + 4L));
+
+		for (int tries = 0; tries < maxTries; tries++) {
+			context.check(Phase.MINIMIZATION, tries, 0L);
+			attempts = tries + 1;
+			context.started(Phase.MINIMIZATION, tries);
+			Timing attempt = context.start();
+			Fuse seeded = fuse.withSeed(random.nextLong());
+
+			Timing timing = context.start();
+			Peeling peeling = seeded.peel(keys, size);
+			timing.stop(Phase.HYPERGRAPH_PEELING);
+			if (peeling == null) {
+				attempt.stop(Phase.MINIMIZATION);
+				context.failed(Phase.MINIMIZATION, tries, Failure.UNPEELABLE_HYPERGRAPH);
+				continue;
+			}
+			context.graphBuilt(seeded.arrayLength, size);
+
+			long[] values = assign(seeded, peeling);
+			attempt.stop(Phase.MINIMIZATION);
+			context.succeeded(Phase.MINIMIZATION, tries);
+			return new BDZHasher<>(hasher, seeded, values, ranks(values), size);
+		}
+		throw new PerfectionException("failed to find minimal hash");
+	}
+
+	// private utility methods
+
+	// assigns vertex values in reverse peeling order so that the values of the vertices of each edge identify its chosen vertex
+	private long[] assign(Fuse fuse, Peeling peeling) {
+		long[] values = new long[(fuse.arrayLength + VALUES_PER_WORD - 1) / VALUES_PER_WORD];
+		// every vertex is initially unused, marked by a value of 3
+		for (int i = 0; i < values.length; i++) {
+			values[i] = -1L;
+		}
+		int[] h012 = new int[5];
+		for (int k = peeling.order.length - 1; k >= 0; k--) {
+			int found = peeling.found[k];
+			fuse.positions(peeling.hashes[peeling.order[k]], h012);
+			// unused vertices contribute 0 to the sum
+			int sum = value(values, h012[found + 1]) % 3 + value(values, h012[found + 2]) % 3;
+			setValue(values, h012[found], (found - sum + 6) % 3);
+		}
+		return values;
+	}
+
+	// the number of chosen vertices preceding each block of words
+	private static int[] ranks(long[] values) {
+		int[] ranks = new int[(values.length + WORDS_PER_RANK - 1) / WORDS_PER_RANK];
+		int rank = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (i % WORDS_PER_RANK == 0) ranks[i / WORDS_PER_RANK] = rank;
+			rank += chosen(values[i], VALUES_PER_WORD);
+		}
+		return ranks;
+	}
+
+	private static int value(long[] values, int vertex) {
+		return (int) (values[vertex / VALUES_PER_WORD] >>> ((vertex % VALUES_PER_WORD) << 1)) & 3;
+	}
+
+	private static void setValue(long[] values, int vertex, int value) {
+		int shift = (vertex % VALUES_PER_WORD) << 1;
+		int word = vertex / VALUES_PER_WORD;
+		values[word] = values[word] & ~(3L << shift) | (long) value << shift;
+	}
+
+	// inner classes
+
+	static final class BDZHasher<E> implements Hasher<E>, Footprint.Measured {
+
+		private final Hasher<E> hasher;
+		private final Fuse fuse;
+		// 2-bit vertex values
+		private final long[] values;
+		// the number of chosen vertices preceding each block of values
+		private final int[] ranks;
+		private final HashSize size;
+
+		BDZHasher(Hasher<E> hasher, Fuse fuse, long[] values, int[] ranks, int size) {
+			this.hasher = hasher;
+			this.fuse = fuse;
+			this.values = values;
+			this.ranks = ranks;
+			this.size = HashSize.fromInt(size);
+		}
+
+		@Override
+		public HashSize getSize() {
+			return size;
+		}
+
+		@Override
+		public HashCode hash(E e) throws IllegalArgumentException {
+			return HashCode.fromInt(intHashValue(e));
+		}
+
+		@Override
+		public int intHashValue(E e) {
+			long h = fuse.hash(hasher.longHashValue(e));
+			int v0 = fuse.position(h, 0);
+			int v1 = fuse.position(h, 1);
+			int v2 = fuse.position(h, 2);
+			int i = (value(values, v0) % 3 + value(values, v1) % 3 + value(values, v2) % 3) % 3;
+			return rank(i == 0 ? v0 : i == 1 ? v1 : v2);
+		}
+
+		@Override
+		public long longHashValue(E e) {
+			return intHashValue(e);
+		}
+
+		@Override
+		public long heapBytes() {
+			return Footprint.objectBytes(20) + Footprint.objectBytes(28) + Footprint.arrayBytes(values.length, 8) + Footprint.arrayBytes(ranks.length, 4) + Footprint.hasherBytes(hasher);
+		}
+
+		// the number of chosen vertices preceding the vertex
+		private int rank(int vertex) {
+			int word = vertex / VALUES_PER_WORD;
+			int block = word / WORDS_PER_RANK;
+			int rank = ranks[block];
+			for (int i = block * WORDS_PER_RANK; i < word; i++) {
+				rank += chosen(values[i], VALUES_PER_WORD);
+			}
+			return rank + chosen(values[word], vertex % VALUES_PER_WORD);
+		}
+
+	}
+
+}
@@ -1,9 +1,11 @@
 package com.tomgibara.perfect;
 
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.ToLongFunction;
 
 import com.tomgibara.bits.BitStore;
 import com.tomgibara.bits.BitStore.BitMatches;
@@ -14,6 +16,9 @@ import com.tomgibara.hashing.HashCode;
 import com.tomgibara.hashing.HashSize;
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.hashing.Hashing;
+import com.tomgibara.perfect.ConstructionObserver.Failure;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.perfect.ConstructionContext.Timing;
 import com.tomgibara.storage.Storage;
 import com.tomgibara.storage.Store;
 import com.tomgibara.storage.StoreType;
@@ -27,109 +32,264 @@ final class BMZ<E> {
 	// statics
 
 	private static final Storage<Long> storage = StoreType.of(long.class).settingNullToDefault().storage();
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
 
 	// static helper methods
 
-	private static int a(long ab) {
+	// a conservative estimate of the memory required by an attempt over m elements and n vertices
+	static long estimateBytes(long m, long n) {
+		// g, vertex degrees and adjacency list array and headers
+		long vertices = n * (4 + 4 + 4 + 32);
+		// edges, adjacency list nodes and boxed vertices
+		long edges = m * (8 + 2 * (24 + 16));
+		return vertices + edges;
+	}
+
+	static int a(long ab) {
 		return (int) (ab >> 32);
 	}
 
-	private static int b(long ab) {
+	static int b(long ab) {
 		return (int) ab;
 	}
 
-	private static long ab(int a, int b) {
+	static long ab(int a, int b) {
 		return (long) a << 32 | 0xffffffffL & b;
 	}
 
+	// the edge of a 64 bit fingerprint, for tables built without a hasher
+	static long edge(long fingerprint, int seed1, int seed2, int vertices) {
+		int h1 = Digests.reduce(Digests.mix(fingerprint + seed1 * GOLDEN), vertices);
+		int h2 = Digests.reduce(Digests.mix(fingerprint + seed2 * GOLDEN), vertices);
+		// this is necessary to avoid loops in the graph
+		if (h1 == h2) h2 = (h2 == vertices - 1) ? 0 : h2 + 1;
+		return ab(h1, h2);
+	}
+
+	// the indices of a number of keys, over which a table may be built with an edge factory
+	static List<Integer> indices(int size) {
+		return new AbstractList<Integer>() {
+			@Override
+			public Integer get(int index) {
+				return index;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
 	// fields
 
 	private final Random random;
+	// null if the BMZ was created with an edge factory
 	private final Hasher<E> hasher;
+	private final EdgeFactory<E> edges;
 	private final int maxTries;
 	private final double c;
+	private final ConstructionContext context;
+	private int attempts = 0;
 
 	// constructors
 
 	BMZ(Hasher<E> hasher, int maxTries, double c, Random random) {
+		this(hasher, maxTries, c, random, ConstructionContext.NONE);
+	}
+
+	BMZ(Hasher<E> hasher, int maxTries, double c, Random random, ConstructionContext context) {
+		this(hasher, (seed1, seed2, vertices) -> new Edges<>(hasher, seed1, seed2, vertices)::edge, maxTries, c, random, context);
+	}
+
+	BMZ(EdgeFactory<E> edges, int maxTries, double c, Random random, ConstructionContext context) {
+		this(null, edges, maxTries, c, random, context);
+	}
+
+	private BMZ(Hasher<E> hasher, EdgeFactory<E> edges, int maxTries, double c, Random random, ConstructionContext context) {
 		this.hasher = hasher;
+		this.edges = edges;
 		this.maxTries = maxTries;
 		this.c = c;
 		this.random = random;
+		this.context = context;
+	}
+
+	// the number of attempts made by the last call to create
+	int getAttempts() {
+		return attempts;
 	}
 
 	Hasher<E> create(Collection<? extends E> elements) {
+		if (hasher == null) throw new IllegalStateException("no hasher");
+		Table table = table(elements);
+		return new BMZHasher<>(hasher, table.seed1, table.seed2, table.g, elements.size());
+	}
+
+	// assigns a table of vertex values to the graph defined by the edge factory over the elements
+	Table table(Collection<? extends E> elements) {
 		long max = (long) Math.ceil(c * elements.size());
 		if (max > Integer.MAX_VALUE) throw new IllegalArgumentException("elements too large");
+		context.checkMemory(Phase.MINIMIZATION, 0, estimateBytes(elements.size(), max));
 		int[] g = new int[(int) max];
 
 		for (int tries = 0; tries < maxTries; tries++) {
+			context.check(Phase.MINIMIZATION, tries, 0L);
+			attempts = tries + 1;
+			context.started(Phase.MINIMIZATION, tries);
+			Timing attempt = context.start();
 			int seed1 = random.nextInt();
 			int seed2 = random.nextInt();
-			BMZHasher<E> bmz = new BMZHasher<>(hasher, seed1, seed2, g, elements.size());
-
-			Graph graph = bmz.computeGraph(elements);
-			if (graph == null) continue; // duplicate edge detected
-
-			boolean assigned = graph.newAssigner(g).assignIntegersToVertices();
-			if (!assigned) continue; // failed to assign to critical vertices
+			ToLongFunction<? super E> fn = edges.edges(seed1, seed2, g.length);
+
+			Timing timing = context.start();
+			Graph graph = computeGraph(elements, fn, g.length, tries);
+			timing.stop(Phase.GRAPH_CONSTRUCTION);
+			if (graph == null) { // duplicate edge detected
+				attempt.stop(Phase.MINIMIZATION);
+				context.failed(Phase.MINIMIZATION, tries, Failure.DUPLICATE_EDGE);
+				continue;
+			}
+			context.graphBuilt(graph.n, graph.m);
+
+			context.check(Phase.CRITICAL_NODE_DETECTION, tries, 0L);
+			boolean assigned = graph.newAssigner(g, context, tries).assignIntegersToVertices();
+			attempt.stop(Phase.MINIMIZATION);
+			if (!assigned) { // failed to assign to critical vertices
+				context.failed(Phase.MINIMIZATION, tries, Failure.CRITICAL_ASSIGNMENT_OVERFLOW);
+				continue;
+			}
 
-			return bmz;
+			context.succeeded(Phase.MINIMIZATION, tries);
+			return new Table(seed1, seed2, g);
 		}
 		throw new PerfectionException("failed to find minimal hash");
 	}
 
+	// private utility methods
+
+	// returns null if the graph cannot be computed
+	private Graph computeGraph(Collection<? extends E> elements, ToLongFunction<? super E> fn, int vertices, int attempt) {
+		Graph graph = new Graph(vertices, elements.size());
+		int index = 0;
+		for (E element : elements) {
+			if (index % ConstructionContext.CHECK_INTERVAL == 0) context.check(Phase.GRAPH_CONSTRUCTION, attempt, index);
+			if (!graph.setEdge(index++, fn.applyAsLong(element))) return null;
+		}
+		return graph;
+	}
 
 	// inner classes
 
-	private static class BMZHasher<E> implements Hasher<E> {
+	// creates the function that maps elements to the edges of a graph, determined by two seeds
+	@FunctionalInterface
+	interface EdgeFactory<E> {
+
+		ToLongFunction<? super E> edges(int seed1, int seed2, int vertices);
+
+	}
+
+	// the vertex values assigned by a successful attempt, together with the seeds that defined its graph
+	static final class Table {
+
+		final int seed1;
+		final int seed2;
+		final int[] g;
+
+		Table(int seed1, int seed2, int[] g) {
+			this.seed1 = seed1;
+			this.seed2 = seed2;
+			this.g = g;
+		}
+
+	}
+
+	// maps elements to the edges of a graph over a specified number of vertices
+	static final class Edges<E> {
 
 		private static final StreamSerializer<Integer> ser =  (i, w) -> w.writeInt(i);
 
 		private final Hasher<E> hasher;
-		private final int[] g;
-		private final HashSize size;
-
+		private final int vertices;
 		private final Hasher<Integer> hasher1;
 		private final Hasher<Integer> hasher2;
 
-		BMZHasher(Hasher<E> hasher, int seed1, int seed2, int[] g, int size) {
+		Edges(Hasher<E> hasher, int seed1, int seed2, int vertices) {
 			this.hasher = hasher;
+			this.vertices = vertices;
+			HashSize range = HashSize.fromInt(vertices);
+			hasher1 = Hashing.murmur3Int(seed1).hasher(ser).sized(range);
+			hasher2 = Hashing.murmur3Int(seed2).hasher(ser).sized(range);
+		}
+
+		// the two vertices of the edge, packed into a long
+		long edge(E e) {
+			return edgeOfHash(hasher.intHashValue(e));
+		}
+
+		// the edge of an element with the specified hash
+		long edgeOfHash(int hc) {
+			int n = vertices;
+			int h1 = hasher1.intHashValue(hc);
+			int h2 = hasher2.intHashValue(hc);
+			// this is necessary to avoid loops in the graph
+			if (h1 == h2) h2 = (h2 == n - 1) ? 0 : h2 + 1;
+			return ab(h1, h2);
+		}
+	}
+
+	static final class BMZHasher<E> implements Hasher<E>, Footprint.Measured {
+
+		private final int seed1;
+		private final int seed2;
+		// g may be shared, the vertices of this hash occupy a range starting at offset
+		private final int[] g;
+		private final int offset;
+		private final int vertices;
+		private final HashSize size;
+		private final Edges<E> edges;
+
+		BMZHasher(Hasher<E> hasher, int seed1, int seed2, int[] g, int size) {
+			this(hasher, seed1, seed2, g, 0, g.length, size);
+		}
+
+		BMZHasher(Hasher<E> hasher, int seed1, int seed2, int[] g, int offset, int vertices, int size) {
+			this.seed1 = seed1;
+			this.seed2 = seed2;
 			this.g = g;
+			this.offset = offset;
+			this.vertices = vertices;
 			this.size = HashSize.fromInt(size);
-			HashSize vertices = HashSize.fromInt(g.length);
-			hasher1 = Hashing.murmur3Int(seed1).hasher(ser).sized(vertices);
-			hasher2 = Hashing.murmur3Int(seed2).hasher(ser).sized(vertices);
+			edges = new Edges<>(hasher, seed1, seed2, vertices);
 		}
 
 		public HashSize getSize() {
 			return size;
 		}
 
-		public HashCode hash(E e) throws IllegalArgumentException {
-			long ab = computeEdge(e);
-			int hash = g[a(ab)] + g[b(ab)];
-			return HashCode.fromInt(hash);
+		int getSeed1() {
+			return seed1;
 		}
 
-		// returns null if the graph cannot be computed
-		Graph computeGraph(Collection<? extends E> elements) {
-			Graph graph = new Graph(g.length, elements.size());
-			int index = 0;
-			for (E element : elements) {
-				if (!graph.setEdge(index++, computeEdge(element))) return null;
-			}
-			return graph;
+		int getSeed2() {
+			return seed2;
 		}
 
-		private long computeEdge(E e) {
-			int n = g.length;
-			int hc = hasher.intHashValue(e);
-			int h1 = hasher1.intHashValue(hc);
-			int h2 = hasher2.intHashValue(hc);
-			// this is necessary to avoid loops in the graph
-			if (h1 == h2) h2 = (h2 == n - 1) ? 0 : h2 + 1;
-			return ab(h1, h2);
+		// exposed for persistence, must not be modified; only valid for unshared arrays
+		int[] getG() {
+			return g;
+		}
+
+		// only the vertices of this hash are counted when g is shared
+		@Override
+		public long heapBytes() {
+			return Footprint.objectBytes(32) + Footprint.arrayBytes(vertices, 4) + Footprint.hasherBytes(edges.hasher);
+		}
+
+		public HashCode hash(E e) throws IllegalArgumentException {
+			long ab = edges.edge(e);
+			int hash = g[offset + a(ab)] + g[offset + b(ab)];
+			return HashCode.fromInt(hash);
 		}
 
 	}
@@ -165,8 +325,8 @@ final class BMZ<E> {
 			return true;
 		}
 
-		Assigner newAssigner(int[] g) {
-			return new Assigner(g);
+		Assigner newAssigner(int[] g, ConstructionContext context, int attempt) {
+			return new Assigner(g, context, attempt);
 		}
 
 		// private utility methods
@@ -187,17 +347,31 @@ final class BMZ<E> {
 			private final BitVector criticalNodes;
 			// records the edges that have been assigned a value
 			private final BitVector assignedEdges;
+			private final ConstructionContext context;
+			private final int attempt;
 
-			Assigner(int[] g) {
+			Assigner(int[] g, ConstructionContext context, int attempt) {
 				this.g = g;
+				this.context = context;
+				this.attempt = attempt;
 				assert(g.length == n);
 				assignedEdges = new BitVector(m);
+				Timing timing = context.start();
 				criticalNodes = findCriticalNodes();
+				timing.stop(Phase.CRITICAL_NODE_DETECTION);
+				context.criticalNodesFound(criticalNodes.ones().count());
 			}
 
 			boolean assignIntegersToVertices() {
-				if (!assignIntegersToCriticalVertices()) return false;
+				context.check(Phase.CRITICAL_ASSIGNMENT, attempt, 0L);
+				Timing timing = context.start();
+				boolean assigned = assignIntegersToCriticalVertices();
+				timing.stop(Phase.CRITICAL_ASSIGNMENT);
+				if (!assigned) return false;
+				context.check(Phase.NON_CRITICAL_ASSIGNMENT, attempt, 0L);
+				timing = context.start();
 				assignIntegersToNonCriticalVertices();
+				timing.stop(Phase.NON_CRITICAL_ASSIGNMENT);
 				return true;
 			}
 
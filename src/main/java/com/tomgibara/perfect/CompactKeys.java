@@ -0,0 +1,377 @@
+package com.tomgibara.perfect;
+
+import java.util.Collection;
+
+import com.tomgibara.hashing.Hasher;
+
+/**
+ * <p>
+ * A compact representation of the keys of a minimal hash domain consisting of
+ * strings or byte arrays. Instances are obtained via
+ * {@link Minimal#getCompactKeys()}.
+ *
+ * <p>
+ * Rather than retaining each key as a separate object, the keys are encoded
+ * into a single byte arena, ordered by hash value, and located via a two-level
+ * table of offsets. This typically requires only a few bytes per key beyond
+ * the encoded key data itself. Probe keys are compared against the arena in
+ * place, without being encoded, and keys are only decoded into objects when
+ * they are requested by index.
+ *
+ * <p>
+ * Strings are encoded character-by-character into one, two or three bytes in
+ * the manner of UTF-8; unlike standard UTF-8 encoding this is lossless for all
+ * strings, including those that contain unpaired surrogates.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of keys, either {@code String} or {@code byte[]}
+ * @see Minimal#withCompactKeys()
+ */
+public final class CompactKeys<T> implements DomainKeys<T> {
+
+	// statics
+
+	private static final int PAGE_BITS = 30;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final long PAGE_MASK = PAGE_SIZE - 1;
+	private static final int BLOCK_BITS = 6;
+	private static final int BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+
+	static <T> CompactKeys<T> build(Hasher<T> hasher, Collection<? extends T> values) {
+		int size = values.size();
+		// first pass: record the encoded length of each key at its index
+		Encoding encoding = null;
+		int[] offsets = new int[size + 1];
+		for (T value : values) {
+			Encoding e = Encoding.of(value);
+			if (encoding == null) {
+				encoding = e;
+			} else if (e != encoding) {
+				throw new IllegalStateException("domain values of mixed types");
+			}
+			offsets[hasher.intHashValue(value)] = e.length(value);
+		}
+		if (encoding == null) encoding = Encoding.BYTES;
+
+		// convert lengths into offsets relative to blocks
+		long[] blockOffsets = new long[(size >> BLOCK_BITS) + 1];
+		long position = 0L;
+		int maxLength = 0;
+		for (int i = 0; i <= size; i++) {
+			if ((i & BLOCK_MASK) == 0) blockOffsets[i >> BLOCK_BITS] = position;
+			int length = offsets[i];
+			long offset = position - blockOffsets[i >> BLOCK_BITS];
+			if (offset > Integer.MAX_VALUE) throw new IllegalStateException("keys too long");
+			offsets[i] = (int) offset;
+			position += length;
+			maxLength = Math.max(maxLength, length);
+		}
+
+		// second pass: encode the keys into the arena
+		byte[][] pages = new byte[(int) ((position + PAGE_SIZE - 1) >> PAGE_BITS)][];
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = new byte[(int) Math.min(PAGE_SIZE, position - ((long) i << PAGE_BITS))];
+		}
+		CompactKeys<T> keys = new CompactKeys<>(encoding, size, blockOffsets, offsets, pages, position);
+		byte[] buffer = new byte[maxLength];
+		for (T value : values) {
+			int index = hasher.intHashValue(value);
+			int length = encoding.encode(value, buffer);
+			keys.write(keys.start(index), buffer, length);
+		}
+		return keys;
+	}
+
+	// fields
+
+	private final Encoding encoding;
+	private final int size;
+	// the position of every 64th key in the arena
+	private final long[] blockOffsets;
+	// the position of each key relative to its block
+	private final int[] offsets;
+	private final byte[][] pages;
+	private final long length;
+
+	// constructors
+
+	private CompactKeys(Encoding encoding, int size, long[] blockOffsets, int[] offsets, byte[][] pages, long length) {
+		this.encoding = encoding;
+		this.size = size;
+		this.blockOffsets = blockOffsets;
+		this.offsets = offsets;
+		this.pages = pages;
+		this.length = length;
+	}
+
+	// accessors
+
+	/**
+	 * The number of keys.
+	 *
+	 * @return the size of the domain
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The total number of bytes occupied by the encoded keys.
+	 *
+	 * @return the size of the arena in bytes
+	 */
+	public long arenaSize() {
+		return length;
+	}
+
+	// package scoped methods
+
+	// the estimated heap bytes occupied by the arena and its offsets
+	long heapBytes() {
+		long bytes = Footprint.objectBytes(40) + Footprint.arrayBytes(blockOffsets.length, 8) + Footprint.arrayBytes(offsets.length, 4) + Footprint.arrayBytes(pages.length, 4);
+		for (byte[] page : pages) {
+			bytes += Footprint.arrayBytes(page.length, 1);
+		}
+		return bytes;
+	}
+
+	// methods
+
+	/**
+	 * Decodes the key with the specified hash value. A new object is returned
+	 * from each call to this method.
+	 *
+	 * @param index
+	 *            the hash value of the key
+	 * @return the key at the specified index
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		checkIndex(index);
+		long start = start(index);
+		int length = (int) (start(index + 1) - start);
+		if (length == 0) return (T) encoding.decode(new byte[0], 0, 0);
+		int offset = (int) (start & PAGE_MASK);
+		byte[] page = page(start);
+		if (offset + length <= page.length) return (T) encoding.decode(page, offset, length);
+		return (T) encoding.decode(read(start, length), 0, length);
+	}
+
+	/**
+	 * Whether the supplied object is of a type that is stored by this object.
+	 *
+	 * @param o
+	 *            any object
+	 * @return true if the object could be a key, false otherwise
+	 */
+	@Override
+	public boolean isCandidate(Object o) {
+		return encoding.isCandidate(o);
+	}
+
+	/**
+	 * Compares the key at the specified index with the supplied value without
+	 * decoding it.
+	 *
+	 * @param index
+	 *            the hash value of a key
+	 * @param value
+	 *            a possible key
+	 * @return true if the value equals the key with the specified index
+	 */
+	@Override
+	public boolean matches(int index, T value) {
+		checkIndex(index);
+		long start = start(index);
+		int length = (int) (start(index + 1) - start);
+		int offset = (int) (start & PAGE_MASK);
+		if (length == 0) return encoding.matches(value, null, 0, 0);
+		byte[] page = page(start);
+		if (offset + length <= page.length) return encoding.matches(value, page, offset, length);
+		return encoding.matches(value, read(start, length), 0, length);
+	}
+
+	// private utility methods
+
+	private void checkIndex(int index) {
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= size) throw new IllegalArgumentException("index too large");
+	}
+
+	private long start(int index) {
+		return blockOffsets[index >> BLOCK_BITS] + offsets[index];
+	}
+
+	private byte[] page(long position) {
+		return pages[(int) (position >> PAGE_BITS)];
+	}
+
+	// reads bytes that straddle pages
+	private byte[] read(long position, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ) {
+			byte[] page = page(position);
+			int offset = (int) (position & PAGE_MASK);
+			int count = Math.min(length - i, page.length - offset);
+			System.arraycopy(page, offset, bytes, i, count);
+			i += count;
+			position += count;
+		}
+		return bytes;
+	}
+
+	private void write(long position, byte[] bytes, int length) {
+		for (int i = 0; i < length; ) {
+			byte[] page = page(position);
+			int offset = (int) (position & PAGE_MASK);
+			int count = Math.min(length - i, page.length - offset);
+			System.arraycopy(bytes, i, page, offset, count);
+			i += count;
+			position += count;
+		}
+	}
+
+	// inner classes
+
+	private enum Encoding {
+
+		STRINGS {
+
+			@Override
+			boolean isCandidate(Object o) {
+				return o instanceof String;
+			}
+
+			@Override
+			int length(Object value) {
+				String str = (String) value;
+				int length = 0;
+				for (int i = 0; i < str.length(); i++) {
+					char c = str.charAt(i);
+					length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+				}
+				return length;
+			}
+
+			@Override
+			int encode(Object value, byte[] buffer) {
+				String str = (String) value;
+				int p = 0;
+				for (int i = 0; i < str.length(); i++) {
+					char c = str.charAt(i);
+					if (c < 0x80) {
+						buffer[p++] = (byte) c;
+					} else if (c < 0x800) {
+						buffer[p++] = (byte) (0xc0 | c >> 6);
+						buffer[p++] = (byte) (0x80 | c & 0x3f);
+					} else {
+						buffer[p++] = (byte) (0xe0 | c >> 12);
+						buffer[p++] = (byte) (0x80 | c >> 6 & 0x3f);
+						buffer[p++] = (byte) (0x80 | c & 0x3f);
+					}
+				}
+				return p;
+			}
+
+			@Override
+			Object decode(byte[] bytes, int offset, int length) {
+				char[] chars = new char[length];
+				int count = 0;
+				for (int i = offset, limit = offset + length; i < limit; ) {
+					int b = bytes[i] & 0xff;
+					if (b < 0x80) {
+						chars[count++] = (char) b;
+						i += 1;
+					} else if (b < 0xe0) {
+						chars[count++] = (char) ((b & 0x1f) << 6 | bytes[i + 1] & 0x3f);
+						i += 2;
+					} else {
+						chars[count++] = (char) ((b & 0x0f) << 12 | (bytes[i + 1] & 0x3f) << 6 | bytes[i + 2] & 0x3f);
+						i += 3;
+					}
+				}
+				return new String(chars, 0, count);
+			}
+
+			@Override
+			boolean matches(Object value, byte[] bytes, int offset, int length) {
+				String str = (String) value;
+				int p = offset;
+				int limit = offset + length;
+				for (int i = 0; i < str.length(); i++) {
+					char c = str.charAt(i);
+					if (c < 0x80) {
+						if (p >= limit || bytes[p++] != (byte) c) return false;
+					} else if (c < 0x800) {
+						if (p + 2 > limit) return false;
+						if (bytes[p++] != (byte) (0xc0 | c >> 6)) return false;
+						if (bytes[p++] != (byte) (0x80 | c & 0x3f)) return false;
+					} else {
+						if (p + 3 > limit) return false;
+						if (bytes[p++] != (byte) (0xe0 | c >> 12)) return false;
+						if (bytes[p++] != (byte) (0x80 | c >> 6 & 0x3f)) return false;
+						if (bytes[p++] != (byte) (0x80 | c & 0x3f)) return false;
+					}
+				}
+				return p == limit;
+			}
+		},
+
+		BYTES {
+
+			@Override
+			boolean isCandidate(Object o) {
+				return o instanceof byte[];
+			}
+
+			@Override
+			int length(Object value) {
+				return ((byte[]) value).length;
+			}
+
+			@Override
+			int encode(Object value, byte[] buffer) {
+				byte[] bytes = (byte[]) value;
+				System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+				return bytes.length;
+			}
+
+			@Override
+			Object decode(byte[] bytes, int offset, int length) {
+				byte[] copy = new byte[length];
+				System.arraycopy(bytes, offset, copy, 0, length);
+				return copy;
+			}
+
+			@Override
+			boolean matches(Object value, byte[] bytes, int offset, int length) {
+				byte[] other = (byte[]) value;
+				if (other.length != length) return false;
+				for (int i = 0; i < length; i++) {
+					if (other[i] != bytes[offset + i]) return false;
+				}
+				return true;
+			}
+		};
+
+		static Encoding of(Object value) {
+			if (value instanceof String) return STRINGS;
+			if (value instanceof byte[]) return BYTES;
+			throw new IllegalStateException("domain values not strings or byte arrays");
+		}
+
+		abstract boolean isCandidate(Object o);
+
+		abstract int length(Object value);
+
+		abstract int encode(Object value, byte[] buffer);
+
+		abstract Object decode(byte[] bytes, int offset, int length);
+
+		abstract boolean matches(Object value, byte[] bytes, int offset, int length);
+	}
+}
@@ -0,0 +1,49 @@
+package com.tomgibara.perfect;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// a fixed size bitmap that may be safely modified by multiple threads
+final class ConcurrentBitmap {
+
+	private static final int MAX_BITS_LOG = 34;
+
+	// the number of bits in a bitmap suitable for filtering the specified number of values
+	static int filterBitsLog(long valueCount) {
+		long bits = Math.max(64L, valueCount << 3);
+		return Math.min(MAX_BITS_LOG, 64 - Long.numberOfLeadingZeros(bits - 1));
+	}
+
+	private final AtomicLongArray words;
+
+	ConcurrentBitmap(long size) {
+		if (size < 0L) throw new IllegalArgumentException("negative size");
+		long count = (size + 63) >> 6;
+		if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("size too large");
+		words = new AtomicLongArray((int) count);
+	}
+
+	// sets the bit, returning true if it was already set
+	boolean getThenSet(long index) {
+		int i = (int) (index >>> 6);
+		long mask = 1L << index;
+		while (true) {
+			long word = words.get(i);
+			if ((word & mask) != 0L) return true;
+			if (words.compareAndSet(i, word, word | mask)) return false;
+		}
+	}
+
+	// sets the bits of the mask in the indexed word, returning true if all were already set
+	boolean getThenSetAll(int wordIndex, long mask) {
+		while (true) {
+			long word = words.get(wordIndex);
+			if ((word & mask) == mask) return true;
+			if (words.compareAndSet(wordIndex, word, word | mask)) return false;
+		}
+	}
+
+	int wordCount() {
+		return words.length();
+	}
+
+}
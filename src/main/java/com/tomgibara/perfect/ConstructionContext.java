@@ -0,0 +1,175 @@
+package com.tomgibara.perfect;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.tomgibara.perfect.ConstructionObserver.Failure;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+// the context in which hashes are constructed: reports events to an observer,
+// measuring phases only when an observer is present, and enforces limits
+final class ConstructionContext {
+
+	// statics
+
+	static final ConstructionContext NONE = new ConstructionContext(ConstructionObserver.NONE, ConstructionLimits.none());
+
+	// the number of values processed between checks of the limits
+	static final int CHECK_INTERVAL = 4096;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private static final Timing NO_TIMING = new Timing(null);
+
+	static ConstructionContext of(ConstructionObserver observer) {
+		if (observer == null) throw new IllegalArgumentException("null observer");
+		return observer == ConstructionObserver.NONE ? NONE : new ConstructionContext(observer, ConstructionLimits.none());
+	}
+
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean beans = (com.sun.management.ThreadMXBean) threads;
+			if (beans.isThreadAllocatedMemorySupported() && beans.isThreadAllocatedMemoryEnabled()) {
+				return beans.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1L;
+	}
+
+	// fields
+
+	final ConstructionObserver observer;
+	final ConstructionLimits limits;
+	private final boolean active;
+	private final boolean limited;
+
+	// constructors
+
+	private ConstructionContext(ConstructionObserver observer, ConstructionLimits limits) {
+		this.observer = observer;
+		this.limits = limits;
+		this.active = observer != ConstructionObserver.NONE;
+		this.limited = !limits.isNone();
+	}
+
+	// methods
+
+	ConstructionContext withObserver(ConstructionObserver observer) {
+		if (observer == null) throw new IllegalArgumentException("null observer");
+		if (observer == this.observer) return this;
+		return new ConstructionContext(observer, limits);
+	}
+
+	ConstructionContext withLimits(ConstructionLimits limits) {
+		if (limits == null) throw new IllegalArgumentException("null limits");
+		if (limits == this.limits) return this;
+		return new ConstructionContext(observer, limits);
+	}
+
+	// performs construction with the executor; cancelling the future cancels the construction
+	<R> CompletableFuture<R> async(Executor executor, Function<ConstructionContext, R> construction) {
+		if (executor == null) throw new IllegalArgumentException("null executor");
+		CompletableFuture<R> future = new CompletableFuture<>();
+		ConstructionContext cancellable = withLimits(limits.withCancellation(future::isCancelled));
+		try {
+			executor.execute(() -> {
+				if (future.isDone()) return;
+				try {
+					future.complete(construction.apply(cancellable));
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	// fails if a limit has been breached
+	void check(Phase phase, int attempt, long processed) {
+		if (!limited) return;
+		ConstructionProgress.Reason reason = limits.breach();
+		if (reason != null) throw new PerfectionException(new ConstructionProgress(reason, phase, attempt, processed));
+	}
+
+	// fails if the memory required by a phase exceeds the budget
+	void checkMemory(Phase phase, int attempt, long bytes) {
+		if (limited && limits.exceedsBudget(bytes)) {
+			throw new PerfectionException(new ConstructionProgress(ConstructionProgress.Reason.MEMORY_BUDGET_EXCEEDED, phase, attempt, 0L));
+		}
+	}
+
+	Timing start() {
+		return active ? new Timing(this) : NO_TIMING;
+	}
+
+	void started(Phase phase, int attempt) {
+		if (active) observer.attemptStarted(phase, attempt);
+	}
+
+	void failed(Phase phase, int attempt, Failure failure) {
+		if (active) observer.attemptFailed(phase, attempt, failure);
+	}
+
+	void succeeded(Phase phase, int attempt) {
+		if (active) observer.attemptSucceeded(phase, attempt);
+	}
+
+	void graphBuilt(int vertices, int edges) {
+		if (active) observer.graphBuilt(vertices, edges);
+	}
+
+	void criticalNodesFound(int count) {
+		if (active) observer.criticalNodesFound(count);
+	}
+
+	// times the test and counts the passes it makes over the domain
+	<T> boolean check(Phase phase, PerfectDomain<T> domain, Predicate<PerfectDomain<T>> test) {
+		check(phase, 0, 0L);
+		// the domain enforces the limits during the test
+		if (limited) domain = domain.withContext(this, phase);
+		if (!active) return test.test(domain);
+		LongAdder passes = new LongAdder();
+		Timing timing = start();
+		boolean unique = test.test(domain.counted(passes));
+		timing.stop(phase);
+		observer.uniquenessChecked(phase, passes.intValue(), unique);
+		return unique;
+	}
+
+	// inner classes
+
+	static final class Timing {
+
+		private final ConstructionContext context;
+		private final long startNanos;
+		private final long startBytes;
+
+		private Timing(ConstructionContext context) {
+			this.context = context;
+			if (context == null) {
+				startNanos = 0L;
+				startBytes = 0L;
+			} else {
+				startNanos = System.nanoTime();
+				startBytes = allocatedBytes();
+			}
+		}
+
+		void stop(Phase phase) {
+			if (context == null) return;
+			long duration = System.nanoTime() - startNanos;
+			long bytes = startBytes < 0L ? -1L : allocatedBytes() - startBytes;
+			context.observer.phaseCompleted(phase, duration, bytes);
+		}
+
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.tomgibara.perfect;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * Limits that bound the resources consumed when constructing hashes. Limits
+ * may combine a wall-clock deadline, a means of cancelling construction, and a
+ * memory budget. They are applied to a {@link Perfectionist} or to a
+ * {@link Perfect} hash via their {@code limitedBy} methods.
+ *
+ * <p>
+ * Limits are checked between the phases of construction and periodically
+ * within the construction of graphs; when a limit is breached, construction
+ * fails promptly with a {@link PerfectionException} that reports the progress
+ * made (see {@link PerfectionException#getProgress()}). All limits, other than
+ * {@link #none()}, also treat interruption of the constructing thread as
+ * cancellation; the interrupted status of the thread is not cleared.
+ *
+ * <p>
+ * The memory budget is applied to estimates of the memory that each phase of
+ * construction requires: phases that would exceed the budget fail before they
+ * begin, and uniqueness checks are partitioned so that they remain within the
+ * budget. The memory occupied by the domain values themselves is not
+ * included.
+ *
+ * <p>
+ * Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @see Perfectionist#limitedBy(ConstructionLimits)
+ * @see Perfect#limitedBy(ConstructionLimits)
+ */
+
+public final class ConstructionLimits {
+
+	// statics
+
+	private static final ConstructionLimits NONE = new ConstructionLimits(false, null, null, -1L);
+	private static final ConstructionLimits INTERRUPTIBLE = new ConstructionLimits(true, null, null, -1L);
+
+	/**
+	 * Imposes no limits on construction; interruption of the constructing
+	 * thread is ignored.
+	 *
+	 * @return the absence of limits
+	 */
+
+	public static ConstructionLimits none() {
+		return NONE;
+	}
+
+	/**
+	 * Imposes no limits on construction except that interruption of the
+	 * constructing thread cancels construction. Other limits may be added to
+	 * the returned object.
+	 *
+	 * @return limits under which construction may be interrupted
+	 */
+
+	public static ConstructionLimits interruptible() {
+		return INTERRUPTIBLE;
+	}
+
+	// fields
+
+	private final boolean interruptible;
+	private final Instant deadline;
+	private final BooleanSupplier cancellation;
+	private final long memoryBudget;
+
+	// constructors
+
+	private ConstructionLimits(boolean interruptible, Instant deadline, BooleanSupplier cancellation, long memoryBudget) {
+		this.interruptible = interruptible;
+		this.deadline = deadline;
+		this.cancellation = cancellation;
+		this.memoryBudget = memoryBudget;
+	}
+
+	// accessors
+
+	/**
+	 * The time by which construction must complete.
+	 *
+	 * @return the deadline, or empty
+	 */
+
+	public Optional<Instant> getDeadline() {
+		return Optional.ofNullable(deadline);
+	}
+
+	/**
+	 * The greatest number of bytes that construction is permitted to require.
+	 *
+	 * @return the memory budget, or empty
+	 */
+
+	public OptionalLong getMemoryBudget() {
+		return memoryBudget < 0L ? OptionalLong.empty() : OptionalLong.of(memoryBudget);
+	}
+
+	/**
+	 * Whether construction under these limits may be interrupted.
+	 *
+	 * @return true if interruption cancels construction, false otherwise
+	 */
+
+	public boolean isInterruptible() {
+		return interruptible;
+	}
+
+	// methods
+
+	/**
+	 * Limits that additionally require construction to complete by the
+	 * specified time.
+	 *
+	 * @param deadline
+	 *            the time by which construction must complete
+	 * @return limits with the specified deadline
+	 */
+
+	public ConstructionLimits withDeadline(Instant deadline) {
+		if (deadline == null) throw new IllegalArgumentException("null deadline");
+		return new ConstructionLimits(true, deadline, cancellation, memoryBudget);
+	}
+
+	/**
+	 * Limits that additionally require construction to complete within the
+	 * specified time from now.
+	 *
+	 * @param timeout
+	 *            the time permitted for construction
+	 * @return limits with a deadline after the specified timeout
+	 */
+
+	public ConstructionLimits withTimeout(Duration timeout) {
+		if (timeout == null) throw new IllegalArgumentException("null timeout");
+		return withDeadline(Instant.now().plus(timeout));
+	}
+
+	/**
+	 * Limits under which construction is additionally cancelled once the
+	 * supplied condition becomes true. The condition is evaluated periodically
+	 * during construction and should be inexpensive.
+	 *
+	 * @param cancelled
+	 *            true when construction should be cancelled
+	 * @return limits with the specified cancellation condition
+	 */
+
+	public ConstructionLimits withCancellation(BooleanSupplier cancelled) {
+		if (cancelled == null) throw new IllegalArgumentException("null cancelled");
+		BooleanSupplier combined = cancellation == null ? cancelled : () -> cancellation.getAsBoolean() || cancelled.getAsBoolean();
+		return new ConstructionLimits(true, deadline, combined, memoryBudget);
+	}
+
+	/**
+	 * Limits that additionally bound the memory that construction may require.
+	 *
+	 * @param bytes
+	 *            the memory budget in bytes
+	 * @return limits with the specified memory budget
+	 */
+
+	public ConstructionLimits withMemoryBudget(long bytes) {
+		if (bytes < 0L) throw new IllegalArgumentException("negative bytes");
+		return new ConstructionLimits(true, deadline, cancellation, bytes);
+	}
+
+	// package scoped methods
+
+	boolean isNone() {
+		return this == NONE;
+	}
+
+	// returns the reason that construction should stop, or null
+	ConstructionProgress.Reason breach() {
+		if (interruptible && Thread.currentThread().isInterrupted()) return ConstructionProgress.Reason.CANCELLED;
+		if (cancellation != null && cancellation.getAsBoolean()) return ConstructionProgress.Reason.CANCELLED;
+		if (deadline != null && System.currentTimeMillis() > deadline.toEpochMilli()) return ConstructionProgress.Reason.DEADLINE_EXCEEDED;
+		return null;
+	}
+
+	boolean exceedsBudget(long bytes) {
+		return memoryBudget >= 0L && bytes > memoryBudget;
+	}
+
+	long memoryBudget() {
+		return memoryBudget;
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.tomgibara.perfect;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Receives events that describe the progress of hash construction. Observers
+ * may be supplied when creating a {@link Perfectionist} and when minimizing a
+ * perfect hash; they are notified as candidate hashes are attempted, as
+ * uniqueness checks are made over the domain, and as the graphs used for
+ * minimization are built and assigned.
+ *
+ * <p>
+ * All methods have empty default implementations so that implementations need
+ * only override the events of interest. Events are reported on the thread
+ * performing the construction, and observers should return promptly. An
+ * observer that records events with Java Flight Recorder is available in the
+ * separate {@code perfect-jfr} module.
+ *
+ * @author Tom Gibara
+ *
+ * @see PerfectDomain#using(int, Random, ConstructionObserver)
+ * @see Perfect#minimizedWithBMZ(int, double, ConstructionObserver)
+ */
+
+public interface ConstructionObserver {
+
+	/**
+	 * An observer that ignores all events.
+	 */
+
+	ConstructionObserver NONE = new ConstructionObserver() { };
+
+	/**
+	 * The phases into which construction is divided.
+	 */
+
+	enum Phase {
+
+		/**
+		 * The search for a seeded hash that is perfect over the domain. Each
+		 * attempt tests a single seed.
+		 */
+		SEED_SEARCH,
+
+		/**
+		 * A test of whether a hash is perfect over the domain.
+		 */
+		PERFECTION_CHECK,
+
+		/**
+		 * A test of whether a serializer is injective over the domain.
+		 */
+		INJECTIVITY_CHECK,
+
+		/**
+		 * The derivation of a minimal perfect hash. Each attempt builds and
+		 * assigns a single randomized graph.
+		 */
+		MINIMIZATION,
+
+		/**
+		 * The construction of a graph with an edge for each domain value.
+		 */
+		GRAPH_CONSTRUCTION,
+
+		/**
+		 * The identification of critical vertices, those with degree greater
+		 * than two or which lie on a cycle.
+		 */
+		CRITICAL_NODE_DETECTION,
+
+		/**
+		 * The assignment of values to critical vertices.
+		 */
+		CRITICAL_ASSIGNMENT,
+
+		/**
+		 * The assignment of values to the remaining vertices.
+		 */
+		NON_CRITICAL_ASSIGNMENT,
+
+		/**
+		 * The derivation of a perfect hash into a reduced range by hashing
+		 * values into buckets and displacing each bucket. Each attempt tests a
+		 * single seed.
+		 */
+		RANGE_REDUCTION,
+
+		/**
+		 * The peeling of a 3-uniform hypergraph with an edge for each domain
+		 * value, during minimization with the BDZ algorithm.
+		 */
+		HYPERGRAPH_PEELING
+
+	}
+
+	/**
+	 * The reasons for which an attempt may fail.
+	 */
+
+	enum Failure {
+
+		/**
+		 * A seeded hash did not distinguish every value in the domain.
+		 */
+		NOT_PERFECT,
+
+		/**
+		 * The serializer does not distinguish every value in the domain.
+		 */
+		NOT_INJECTIVE,
+
+		/**
+		 * Two domain values were mapped to the same edge of the graph.
+		 */
+		DUPLICATE_EDGE,
+
+		/**
+		 * The values assigned to critical vertices exceeded the range of the
+		 * minimal hash.
+		 */
+		CRITICAL_ASSIGNMENT_OVERFLOW,
+
+		/**
+		 * No displacement could be found that placed every value of a bucket
+		 * into an unoccupied position of the reduced range.
+		 */
+		DISPLACEMENT_EXHAUSTED,
+
+		/**
+		 * The hypergraph of domain values could not be peeled because it
+		 * contained a cycle.
+		 */
+		UNPEELABLE_HYPERGRAPH
+
+	}
+
+	/**
+	 * Called when an attempt is started.
+	 *
+	 * @param phase
+	 *            one of {@link Phase#SEED_SEARCH}, {@link Phase#MINIMIZATION} or
+	 *            {@link Phase#RANGE_REDUCTION}
+	 * @param attempt
+	 *            the zero-based index of the attempt
+	 */
+
+	default void attemptStarted(Phase phase, int attempt) { }
+
+	/**
+	 * Called when an attempt fails.
+	 *
+	 * @param phase
+	 *            one of {@link Phase#SEED_SEARCH}, {@link Phase#MINIMIZATION} or
+	 *            {@link Phase#RANGE_REDUCTION}
+	 * @param attempt
+	 *            the zero-based index of the attempt
+	 * @param failure
+	 *            the reason for the failure
+	 */
+
+	default void attemptFailed(Phase phase, int attempt, Failure failure) { }
+
+	/**
+	 * Called when an attempt succeeds.
+	 *
+	 * @param phase
+	 *            one of {@link Phase#SEED_SEARCH}, {@link Phase#MINIMIZATION} or
+	 *            {@link Phase#RANGE_REDUCTION}
+	 * @param attempt
+	 *            the zero-based index of the attempt
+	 */
+
+	default void attemptSucceeded(Phase phase, int attempt) { }
+
+	/**
+	 * Called when a graph has been constructed successfully.
+	 *
+	 * @param vertices
+	 *            the number of vertices in the graph
+	 * @param edges
+	 *            the number of edges in the graph
+	 */
+
+	default void graphBuilt(int vertices, int edges) { }
+
+	/**
+	 * Called when the critical vertices of a graph have been identified.
+	 *
+	 * @param count
+	 *            the number of critical vertices
+	 */
+
+	default void criticalNodesFound(int count) { }
+
+	/**
+	 * Called when a phase of construction has completed, whether or not it
+	 * succeeded.
+	 *
+	 * @param phase
+	 *            the phase completed
+	 * @param durationNanos
+	 *            the time taken by the phase in nanoseconds
+	 * @param allocatedBytes
+	 *            the number of bytes allocated by the constructing thread
+	 *            during the phase, or -1 if this cannot be measured
+	 */
+
+	default void phaseCompleted(Phase phase, long durationNanos, long allocatedBytes) { }
+
+	/**
+	 * Called when a uniqueness check over the domain has completed.
+	 *
+	 * @param phase
+	 *            either {@link Phase#PERFECTION_CHECK} or
+	 *            {@link Phase#INJECTIVITY_CHECK}
+	 * @param passes
+	 *            the number of passes made over the domain values
+	 * @param unique
+	 *            whether the domain values were distinguished
+	 */
+
+	default void uniquenessChecked(Phase phase, int passes, boolean unique) { }
+
+}
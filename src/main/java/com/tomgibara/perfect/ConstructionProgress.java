@@ -0,0 +1,113 @@
+package com.tomgibara.perfect;
+
+import java.io.Serializable;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+/**
+ * Describes the progress that construction had made when it was stopped
+ * because a {@link ConstructionLimits limit} was breached.
+ *
+ * @author Tom Gibara
+ *
+ * @see PerfectionException#getProgress()
+ */
+
+public final class ConstructionProgress implements Serializable {
+
+	// statics
+
+	private static final long serialVersionUID = -6322466264810599014L;
+
+	/**
+	 * The reasons for which construction may be stopped.
+	 */
+
+	public enum Reason {
+
+		/**
+		 * The deadline for construction passed.
+		 */
+		DEADLINE_EXCEEDED,
+
+		/**
+		 * Construction was cancelled or the constructing thread was
+		 * interrupted.
+		 */
+		CANCELLED,
+
+		/**
+		 * Construction would have required more memory than was budgeted.
+		 */
+		MEMORY_BUDGET_EXCEEDED
+
+	}
+
+	// fields
+
+	private final Reason reason;
+	private final Phase phase;
+	private final int attempt;
+	private final long processed;
+
+	// constructors
+
+	ConstructionProgress(Reason reason, Phase phase, int attempt, long processed) {
+		this.reason = reason;
+		this.phase = phase;
+		this.attempt = attempt;
+		this.processed = processed;
+	}
+
+	// accessors
+
+	/**
+	 * Why construction was stopped.
+	 *
+	 * @return the reason construction stopped
+	 */
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * The phase of construction that was in progress.
+	 *
+	 * @return the phase in which construction stopped
+	 */
+
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * The zero-based index of the attempt in progress within the phase.
+	 *
+	 * @return the attempt in which construction stopped
+	 */
+
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * The number of domain values that had been processed within the phase.
+	 * This is only recorded for phases that process values individually, such
+	 * as graph construction.
+	 *
+	 * @return the number of values processed
+	 */
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return reason + " during " + phase + " (attempt " + attempt + ", " + processed + " values processed)";
+	}
+
+}
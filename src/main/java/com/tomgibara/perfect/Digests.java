@@ -0,0 +1,57 @@
+package com.tomgibara.perfect;
+
+// bit mixing and byte hashing functions used to derive well distributed values
+final class Digests {
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	// a 64 bit digest of the specified bytes
+	static long digest(byte[] bytes, int offset, int length, long seed) {
+		long h = seed ^ length * C1;
+		int limit = offset + (length & ~7);
+		int i = offset;
+		for (; i < limit; i += 8) {
+			long k =
+					bytes[i    ] & 0xffL        |
+					(bytes[i + 1] & 0xffL) <<  8 |
+					(bytes[i + 2] & 0xffL) << 16 |
+					(bytes[i + 3] & 0xffL) << 24 |
+					(bytes[i + 4] & 0xffL) << 32 |
+					(bytes[i + 5] & 0xffL) << 40 |
+					(bytes[i + 6] & 0xffL) << 48 |
+					(bytes[i + 7] & 0xffL) << 56;
+			h ^= Long.rotateLeft(k * C1, 31) * C2;
+			h = Long.rotateLeft(h, 27) * 5 + 0x52dce729L;
+		}
+		long k = 0L;
+		for (int shift = 0; i < offset + length; i++, shift += 8) {
+			k |= (bytes[i] & 0xffL) << shift;
+		}
+		h ^= Long.rotateLeft(k * C2, 33) * C1;
+		return mix(h ^ length);
+	}
+
+	// the murmur3 finalizer
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	// maps a 32 bit hash uniformly into [0, n)
+	static int reduce(int hash, int n) {
+		return (int) (((hash & 0xffffffffL) * n) >>> 32);
+	}
+
+	// maps a 64 bit hash uniformly into [0, n) using its high bits
+	static int reduce(long hash, int n) {
+		return reduce((int) (hash >>> 32), n);
+	}
+
+	private Digests() { }
+
+}
@@ -0,0 +1,29 @@
+package com.tomgibara.perfect;
+
+import com.tomgibara.storage.Store;
+
+// the keys of a minimal hash domain, indexed by hash value
+interface DomainKeys<T> {
+
+	static <T> DomainKeys<T> of(Store<T> store) {
+		return new DomainKeys<T>() {
+			@Override public int size() { return store.size(); }
+			@Override public T get(int index) { return store.get(index); }
+			@Override public boolean isCandidate(Object o) { return store.isSettable(o); }
+			@Override public boolean matches(int index, T value) { return store.get(index).equals(value); }
+		};
+	}
+
+	// the number of keys
+	int size();
+
+	// the key with the specified hash value
+	T get(int index);
+
+	// whether the object is of a type that could be a key
+	boolean isCandidate(Object o);
+
+	// whether the key at the specified index is equal to the supplied value
+	boolean matches(int index, T value);
+
+}
@@ -0,0 +1,17 @@
+package com.tomgibara.perfect;
+
+import java.util.function.ToLongFunction;
+
+// identifies duplicates among the long values derived from domain values
+interface DuplicateFinder<T> {
+
+	// returns at most limit distinct duplicated values in ascending order;
+	// bits is the number of significant bits in the values, any higher bits
+	// are ignored
+	long[] duplicates(ToLongFunction<? super T> fn, int bits, int limit);
+
+	default boolean isUnique(ToLongFunction<? super T> fn, int bits) {
+		return duplicates(fn, bits, 1).length == 0;
+	}
+
+}
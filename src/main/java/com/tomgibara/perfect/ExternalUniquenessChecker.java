@@ -0,0 +1,245 @@
+package com.tomgibara.perfect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.perfect.LongUniquenessChecker.Longs;
+
+// identifies duplicates among the long values derived from a collection using
+// an external sort; values are accumulated into sorted runs that are spilled to
+// temporary files whenever the memory budget is exhausted, the runs are then
+// merged, with duplicates being adjacent in the merged sequence; the limits of
+// the construction context, if any, are checked as runs are formed and merged
+class ExternalUniquenessChecker<T> implements DuplicateFinder<T> {
+
+	static final long MIN_MEMORY_BUDGET = 1L << 16;
+
+	private static final int MAX_FAN_IN = 64;
+	private static final int INITIAL_RUN_CAPACITY = 1 << 10;
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+	private static final String FILE_PREFIX = "perfect-";
+	private static final String FILE_SUFFIX = ".run";
+
+	private final Collection<? extends T> values;
+	private final long memoryBudget;
+	private final Path directory;
+	private final ConstructionContext context;
+	private final Phase phase;
+
+	// a null directory indicates that the default temporary directory should be used
+	ExternalUniquenessChecker(Collection<? extends T> values, long memoryBudget, Path directory) {
+		this(values, memoryBudget, directory, ConstructionContext.NONE, null);
+	}
+
+	ExternalUniquenessChecker(Collection<? extends T> values, long memoryBudget, Path directory, ConstructionContext context, Phase phase) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (memoryBudget < MIN_MEMORY_BUDGET) throw new IllegalArgumentException("memoryBudget too small");
+		this.values = values;
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+		this.context = context;
+		this.phase = phase;
+	}
+
+	@Override
+	public long[] duplicates(ToLongFunction<? super T> fn, int bits, int limit) {
+		if (fn == null) throw new IllegalArgumentException("null fn");
+		if (bits < 1 || bits > 64) throw new IllegalArgumentException("invalid bits");
+		if (limit < 1) throw new IllegalArgumentException("non-positive limit");
+		long mask = bits == 64 ? -1L : (1L << bits) - 1L;
+		// the run buffer grows to consume the memory budget, merging requires only stream buffers
+		// the domain size is not consulted since it may require an additional pass over the values
+		int capacity = (int) Math.min(memoryBudget >> 3, Integer.MAX_VALUE - 8);
+		long[] run = new long[Math.min(capacity, INITIAL_RUN_CAPACITY)];
+		Longs dupes = new Longs(limit);
+		// every file created, so that none survive an early return or a failure
+		List<Path> files = new ArrayList<>();
+		List<Path> runs = new ArrayList<>();
+		try {
+			int length = 0;
+			long count = 0L;
+			for (T value : values) {
+				if (count % ConstructionContext.CHECK_INTERVAL == 0) context.check(phase, 0, count);
+				count++;
+				if (length == run.length) {
+					if (length < capacity) {
+						run = Arrays.copyOf(run, (int) Math.min((long) length << 1, capacity));
+					} else {
+						Arrays.sort(run);
+						if (sortedDuplicates(run, length, dupes)) return dupes.toSortedArray();
+						runs.add(writeRun(run, length, files));
+						length = 0;
+					}
+				}
+				run[length++] = fn.applyAsLong(value) & mask;
+			}
+			Arrays.sort(run, 0, length);
+			if (sortedDuplicates(run, length, dupes) || runs.isEmpty()) return dupes.toSortedArray();
+			runs.add(writeRun(run, length, files));
+			run = null; // release the buffer before merging
+			// reduce the number of runs until they can be merged in one pass
+			while (runs.size() > MAX_FAN_IN) {
+				List<Path> merged = new ArrayList<>();
+				for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+					List<Path> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+					Path path = createFile(files);
+					merged.add(path);
+					try (DataOutputStream out = openOutput(path)) {
+						merge(group, out, dupes);
+					}
+					if (dupes.isFull()) return dupes.toSortedArray();
+					deleteAll(group);
+				}
+				runs = merged;
+			}
+			merge(runs, null, dupes);
+			return dupes.toSortedArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deleteAll(files);
+		}
+	}
+
+	// private utility methods
+
+	// records the created file so that it may be deleted
+	private Path createFile(List<Path> files) throws IOException {
+		Path path = directory == null ?
+				Files.createTempFile(FILE_PREFIX, FILE_SUFFIX) :
+				Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+		files.add(path);
+		return path;
+	}
+
+	private Path writeRun(long[] run, int length, List<Path> files) throws IOException {
+		Path path = createFile(files);
+		try (DataOutputStream out = openOutput(path)) {
+			for (int i = 0; i < length; i++) {
+				out.writeLong(run[i]);
+			}
+		}
+		return path;
+	}
+
+	// merges the runs, writing the merged values to out if it is not null
+	private void merge(List<Path> runs, DataOutputStream out, Longs dupes) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+		// a reader that has been removed from the queue and not yet closed or returned to it
+		RunReader reader = null;
+		try {
+			for (Path path : runs) {
+				reader = new RunReader(path);
+				if (reader.advance()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+				reader = null;
+			}
+			boolean first = true;
+			boolean duplicated = false;
+			long previous = 0L;
+			long count = 0L;
+			while (!queue.isEmpty()) {
+				if (count % ConstructionContext.CHECK_INTERVAL == 0) context.check(phase, 0, count);
+				count++;
+				reader = queue.poll();
+				long v = reader.value;
+				if (!first && v == previous) {
+					if (!duplicated) {
+						duplicated = true;
+						if (dupes.addAndCheckFull(v)) return;
+					}
+				} else {
+					duplicated = false;
+				}
+				if (out != null) out.writeLong(v);
+				first = false;
+				previous = v;
+				if (reader.advance()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+				reader = null;
+			}
+		} finally {
+			if (reader != null) reader.close();
+			for (RunReader queued : queue) {
+				queued.close();
+			}
+		}
+	}
+
+	// returns true if the dupes are full
+	private static boolean sortedDuplicates(long[] sorted, int length, Longs dupes) {
+		for (int i = 1; i < length; i++) {
+			long v = sorted[i];
+			if (v == sorted[i - 1] && (i == 1 || v != sorted[i - 2])) {
+				if (dupes.addAndCheckFull(v)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static DataOutputStream openOutput(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), STREAM_BUFFER_SIZE));
+	}
+
+	private static void deleteAll(List<Path> paths) {
+		for (Path path : paths) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				/* nothing we can do */
+			}
+		}
+	}
+
+	// inner classes
+
+	private static final class RunReader implements Comparable<RunReader> {
+
+		private final DataInputStream in;
+		long value;
+
+		RunReader(Path path) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), STREAM_BUFFER_SIZE));
+		}
+
+		boolean advance() throws IOException {
+			try {
+				value = in.readLong();
+				return true;
+			} catch (EOFException e) {
+				return false;
+			}
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+
+		@Override
+		public int compareTo(RunReader that) {
+			return Long.compare(this.value, that.value);
+		}
+
+	}
+
+}
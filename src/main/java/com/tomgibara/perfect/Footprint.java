@@ -0,0 +1,259 @@
+package com.tomgibara.perfect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.tomgibara.bits.BitStore;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.storage.Store;
+
+/**
+ * <p>
+ * An estimate of the memory occupied by a hash or by a collection built from
+ * it, broken down into named components. Footprints are obtained from
+ * {@link Minimal#footprint()}, {@link MinimalSet#footprint()},
+ * {@link MinimalMap#footprint()} and {@link StaticDictionary#footprint()}.
+ *
+ * <p>
+ * Sizes are estimated from the lengths of the arrays that dominate each
+ * component, assuming a 64-bit JVM with compressed object pointers; they are
+ * intended for capacity planning and for detecting regressions, not as exact
+ * measurements. Objects referenced from stores, such as the domain values
+ * themselves, are not included, nor is the memory occupied by hashers that
+ * are not defined by this package, which is typically negligible.
+ *
+ * <p>
+ * Footprints may be exported to metrics systems via {@link #toMetrics()}.
+ *
+ * @author Tom Gibara
+ */
+public final class Footprint {
+
+	// statics
+
+	private static final int ARRAY_HEADER = 16;
+	private static final int OBJECT_HEADER = 12;
+	private static final int REFERENCE = 4;
+
+	// the bytes occupied by an array of the specified length
+	static long arrayBytes(long length, int elementBytes) {
+		return align(ARRAY_HEADER + length * elementBytes);
+	}
+
+	// the bytes occupied by an object with fields occupying the specified number of bytes
+	static long objectBytes(int fieldBytes) {
+		return align(OBJECT_HEADER + fieldBytes);
+	}
+
+	static long hasherBytes(Hasher<?> hasher) {
+		return hasher instanceof Measured ? ((Measured) hasher).heapBytes() : 0L;
+	}
+
+	static long bitsBytes(BitStore bits) {
+		return bitsBytes(bits.size());
+	}
+
+	// excludes the objects referenced by the store
+	static long storeBytes(Store<?> store) {
+		Class<?> type = store.type().valueType();
+		long size = store.size();
+		if (type == boolean.class || type == Boolean.class) return bitsBytes(size);
+		return objectBytes(REFERENCE + 8) + arrayBytes(size, elementBytes(type));
+	}
+
+	private static long bitsBytes(long size) {
+		return objectBytes(REFERENCE + 8) + arrayBytes((size + 63L) >> 6, 8);
+	}
+
+	private static int elementBytes(Class<?> type) {
+		if (type == long.class || type == Long.class || type == double.class || type == Double.class) return 8;
+		if (type == int.class || type == Integer.class || type == float.class || type == Float.class) return 4;
+		if (type == short.class || type == Short.class || type == char.class || type == Character.class) return 2;
+		if (type == byte.class || type == Byte.class) return 1;
+		return REFERENCE;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7L) & ~7L;
+	}
+
+	// fields
+
+	private final int keys;
+	private final List<Component> components;
+
+	// constructors
+
+	Footprint(int keys, List<Component> components) {
+		this.keys = keys;
+		this.components = Collections.unmodifiableList(new ArrayList<>(components));
+	}
+
+	// accessors
+
+	/**
+	 * The number of keys over which memory use is reported, typically the size
+	 * of the hash domain.
+	 *
+	 * @return the number of keys
+	 */
+	public int getKeys() {
+		return keys;
+	}
+
+	/**
+	 * The components that together constitute the footprint.
+	 *
+	 * @return an unmodifiable list of components
+	 */
+	public List<Component> getComponents() {
+		return components;
+	}
+
+	/**
+	 * The estimated number of bytes occupied on the heap by all components.
+	 *
+	 * @return the heap bytes
+	 */
+	public long getHeapBytes() {
+		long bytes = 0L;
+		for (Component component : components) {
+			bytes += component.heapBytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The number of bytes occupied outside the heap by all components, such as
+	 * by memory-mapped files.
+	 *
+	 * @return the off-heap bytes
+	 */
+	public long getOffHeapBytes() {
+		long bytes = 0L;
+		for (Component component : components) {
+			bytes += component.offHeapBytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The total number of bytes occupied, both on and off the heap.
+	 *
+	 * @return the total bytes
+	 */
+	public long getTotalBytes() {
+		return getHeapBytes() + getOffHeapBytes();
+	}
+
+	/**
+	 * The total number of bits occupied per key.
+	 *
+	 * @return the bits per key, or zero if there are no keys
+	 */
+	public double getBitsPerKey() {
+		return keys == 0 ? 0.0 : getTotalBytes() * 8.0 / keys;
+	}
+
+	// methods
+
+	/**
+	 * <p>
+	 * The footprint as a flat map of named measurements, suitable for
+	 * exporting to metrics systems. The map contains the entries
+	 * {@code keys}, {@code heapBytes}, {@code offHeapBytes},
+	 * {@code totalBytes} and {@code bitsPerKey}, followed by
+	 * {@code <name>.heapBytes} and {@code <name>.offHeapBytes} for each
+	 * component.
+	 *
+	 * @return an unmodifiable map of measurements in a consistent order
+	 */
+	public Map<String, Number> toMetrics() {
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		metrics.put("keys", keys);
+		metrics.put("heapBytes", getHeapBytes());
+		metrics.put("offHeapBytes", getOffHeapBytes());
+		metrics.put("totalBytes", getTotalBytes());
+		metrics.put("bitsPerKey", getBitsPerKey());
+		for (Component component : components) {
+			metrics.put(component.name + ".heapBytes", component.heapBytes);
+			metrics.put(component.name + ".offHeapBytes", component.offHeapBytes);
+		}
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("keys: ").append(keys).append(", bytes: ").append(getTotalBytes()).append(", bits per key: ").append(String.format(Locale.ROOT, "%.2f", getBitsPerKey()));
+		for (Component component : components) {
+			sb.append(", ").append(component);
+		}
+		return sb.toString();
+	}
+
+	// inner classes
+
+	// implemented by hashers that can estimate their own size
+	interface Measured {
+
+		long heapBytes();
+
+	}
+
+	/**
+	 * The memory occupied by a single named component of a footprint.
+	 */
+	public static final class Component {
+
+		private final String name;
+		private final long heapBytes;
+		private final long offHeapBytes;
+
+		Component(String name, long heapBytes, long offHeapBytes) {
+			this.name = name;
+			this.heapBytes = heapBytes;
+			this.offHeapBytes = offHeapBytes;
+		}
+
+		/**
+		 * The name of the component, such as {@code hasher} or {@code keys}.
+		 *
+		 * @return the component name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The estimated number of bytes occupied by the component on the heap.
+		 *
+		 * @return the heap bytes
+		 */
+		public long getHeapBytes() {
+			return heapBytes;
+		}
+
+		/**
+		 * The number of bytes occupied by the component outside the heap.
+		 *
+		 * @return the off-heap bytes
+		 */
+		public long getOffHeapBytes() {
+			return offHeapBytes;
+		}
+
+		@Override
+		public String toString() {
+			return offHeapBytes == 0L ? name + ": " + heapBytes : name + ": " + heapBytes + " (+" + offHeapBytes + " off-heap)";
+		}
+
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.tomgibara.perfect;
+
+// the layout of a binary fuse structure: each key is mapped to three positions
+// in adjacent segments of an array, and the keys are ordered by peeling the
+// resulting hypergraph so that a value can be assigned to one position of each
+// key, in reverse order, without disturbing the keys already assigned
+final class Fuse {
+
+	// statics
+
+	static final int ARITY = 3;
+
+	private static final int MAX_SEGMENT_LENGTH = 1 << 18;
+
+	// a layout with sufficient positions to peel the specified number of keys with high probability
+	static Fuse forSize(int size) {
+		int n = Math.max(size, 2);
+		int segmentLength = Math.min(1 << (int) Math.floor(Math.log(n) / Math.log(3.33) + 2.25), MAX_SEGMENT_LENGTH);
+		double sizeFactor = Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(n));
+		long capacity = Math.round(n * sizeFactor);
+		long segmentCount = (capacity + segmentLength - 1) / segmentLength - (ARITY - 1);
+		if (segmentCount < 1) segmentCount = 1;
+		if ((segmentCount + ARITY - 1) * segmentLength > Integer.MAX_VALUE) throw new IllegalArgumentException("too many keys");
+		return new Fuse(0L, segmentLength, (int) segmentCount);
+	}
+
+	// returns null if the parameters are invalid
+	static Fuse of(long seed, int segmentLength, int segmentCount) {
+		if (segmentLength < 1 || Integer.bitCount(segmentLength) != 1 || segmentLength > MAX_SEGMENT_LENGTH) return null;
+		if (segmentCount < 1 || (long) (segmentCount + ARITY - 1) * segmentLength > Integer.MAX_VALUE) return null;
+		return new Fuse(seed, segmentLength, segmentCount);
+	}
+
+	// unsigned high 64 bits of the 128 bit product of a hash and a non-negative int
+	private static long mulhi(long hash, int n) {
+		return ((hash >>> 32) * n + (((hash & 0xffffffffL) * n) >>> 32)) >>> 32;
+	}
+
+	private static int mod3(int x) {
+		return x > 2 ? x - 3 : x;
+	}
+
+	// fields
+
+	final long seed;
+	final int segmentLength;
+	final int segmentCount;
+	final int arrayLength;
+	private final int segmentLengthMask;
+	private final int segmentCountLength;
+
+	// constructors
+
+	private Fuse(long seed, int segmentLength, int segmentCount) {
+		this.seed = seed;
+		this.segmentLength = segmentLength;
+		this.segmentCount = segmentCount;
+		arrayLength = (segmentCount + ARITY - 1) * segmentLength;
+		segmentLengthMask = segmentLength - 1;
+		segmentCountLength = segmentCount * segmentLength;
+	}
+
+	// methods
+
+	Fuse withSeed(long seed) {
+		return new Fuse(seed, segmentLength, segmentCount);
+	}
+
+	// the hash of a key from which its positions are derived
+	long hash(long key) {
+		return Digests.mix(key + seed);
+	}
+
+	int position(long h, int index) {
+		long p = mulhi(h, segmentCountLength) + index * segmentLength;
+		p ^= ((h & 0xfffffffffL) >>> (36 - 18 * index)) & segmentLengthMask;
+		return (int) p;
+	}
+
+	// records the three positions of the hash, followed by the first two repeated
+	void positions(long h, int[] h012) {
+		h012[0] = position(h, 0);
+		h012[1] = position(h, 1);
+		h012[2] = position(h, 2);
+		h012[3] = h012[0];
+		h012[4] = h012[1];
+	}
+
+	// peels the hypergraph over the distinct keys, returns null if peeling fails
+	Peeling peel(long[] keys, int size) {
+		long[] hashes = new long[size];
+		for (int i = 0; i < size; i++) {
+			hashes[i] = hash(keys[i]);
+		}
+
+		// order the keys by block to improve locality
+		int blockBits = 1;
+		while ((1 << blockBits) < segmentCount) blockBits++;
+		int[] starts = new int[(1 << blockBits) + 1];
+		for (int i = 0; i < size; i++) {
+			starts[(int) (hashes[i] >>> (64 - blockBits)) + 1]++;
+		}
+		for (int b = 1; b < starts.length; b++) {
+			starts[b] += starts[b - 1];
+		}
+		int[] ordered = new int[size];
+		for (int i = 0; i < size; i++) {
+			ordered[starts[(int) (hashes[i] >>> (64 - blockBits))]++] = i;
+		}
+
+		// count the keys at each position, recording the exclusive-or of their indices and position indices
+		int[] counts = new int[arrayLength];
+		int[] xors = new int[arrayLength];
+		for (int i : ordered) {
+			long h = hashes[i];
+			for (int j = 0; j < ARITY; j++) {
+				int p = position(h, j);
+				counts[p] = (counts[p] + 4) ^ j;
+				xors[p] ^= i;
+			}
+		}
+		ordered = null;
+
+		// peel positions with a single key
+		int[] alone = new int[arrayLength];
+		int queued = 0;
+		for (int p = 0; p < arrayLength; p++) {
+			if (counts[p] >> 2 == 1) alone[queued++] = p;
+		}
+		int[] order = new int[size];
+		byte[] found = new byte[size];
+		int[] h012 = new int[5];
+		int peeled = 0;
+		while (queued > 0) {
+			int p = alone[--queued];
+			if (counts[p] >> 2 != 1) continue;
+			int i = xors[p];
+			int index = counts[p] & 3;
+			order[peeled] = i;
+			found[peeled] = (byte) index;
+			peeled++;
+			positions(hashes[i], h012);
+			for (int k = 1; k < ARITY; k++) {
+				int other = h012[index + k];
+				counts[other] -= 4;
+				counts[other] ^= mod3(index + k);
+				xors[other] ^= i;
+				if (counts[other] >> 2 == 1) alone[queued++] = other;
+			}
+		}
+		return peeled == size ? new Peeling(order, found, hashes) : null;
+	}
+
+	// inner classes
+
+	// keys should be assigned in the reverse of the order in which they were peeled
+	static final class Peeling {
+
+		// the indices of the keys in the order they were peeled
+		final int[] order;
+		// the index of the position at which each key was peeled
+		final byte[] found;
+		// the hashes of the keys, indexed as the keys
+		final long[] hashes;
+
+		Peeling(int[] order, byte[] found, long[] hashes) {
+			this.order = order;
+			this.found = found;
+			this.hashes = hashes;
+		}
+
+	}
+
+}
@@ -0,0 +1,249 @@
+package com.tomgibara.perfect;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+import com.tomgibara.perfect.Fuse.Peeling;
+import com.tomgibara.streams.StreamSerializer;
+
+/**
+ * <p>
+ * A static approximate membership filter over the values of a
+ * {@link PerfectDomain}. Filters are built via
+ * {@link #build(PerfectDomain, StreamSerializer)} or
+ * {@link #build(PerfectDomain, ToLongFunction)}.
+ *
+ * <p>
+ * A filter never reports that a domain value is absent, but may report that
+ * a value outside the domain is present with a probability of approximately
+ * 0.4%. Unlike a {@link MinimalSet} filled with the domain, a filter does not
+ * retain the domain values; it occupies approximately 9 bits per value.
+ *
+ * <p>
+ * The filter is a binary fuse filter: each value is mapped to three positions
+ * in adjacent segments of an array of 8-bit fingerprints, and the array is
+ * populated by peeling the resulting hypergraph, so that the exclusive-or of
+ * the three fingerprints of each domain value equals a fingerprint derived
+ * from its hash. Membership tests read three array entries and do not
+ * allocate.
+ *
+ * <p>
+ * Filters may be written to a stream via {@link #writeTo(OutputStream)} and
+ * read back via {@link #readFrom(InputStream, StreamSerializer)} or
+ * {@link #readFrom(InputStream, ToLongFunction)}, supplying the same means
+ * of hashing values with which the filter was built. Filters are immutable
+ * and safe for concurrent use by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of values in the domain
+ */
+public final class FuseFilter<T> {
+
+	// statics
+
+	private static final int MAGIC = 0x50464631; // "PFF1"
+	private static final int VERSION = 1;
+	private static final int MAX_ATTEMPTS = 100;
+
+	/**
+	 * Builds a filter over the domain, hashing the byte-serialized form of each
+	 * value.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param domain
+	 *            the values that the filter will contain
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @return a filter containing the domain values
+	 * @throws PerfectionException
+	 *             if the filter could not be constructed
+	 */
+	public static <T> FuseFilter<T> build(PerfectDomain<T> domain, StreamSerializer<T> serializer) throws PerfectionException {
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return build(domain, serializedHash(serializer));
+	}
+
+	/**
+	 * Builds a filter over the domain using an explicit 64-bit hash. The
+	 * probability of false positives is only as low as stated if the hash
+	 * rarely collides over the domain.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param domain
+	 *            the values that the filter will contain
+	 * @param hash
+	 *            a 64-bit hash over all domain values
+	 * @return a filter containing the domain values
+	 * @throws PerfectionException
+	 *             if the filter could not be constructed
+	 */
+	public static <T> FuseFilter<T> build(PerfectDomain<T> domain, ToLongFunction<? super T> hash) throws PerfectionException {
+		if (domain == null) throw new IllegalArgumentException("null domain");
+		if (hash == null) throw new IllegalArgumentException("null hash");
+
+		// the keys are the distinct hashes of the domain values
+		long[] keys = new long[domain.getValues().size()];
+		int size = 0;
+		for (T value : domain.getValues()) {
+			keys[size++] = hash.applyAsLong(value);
+		}
+		Arrays.sort(keys);
+		size = Math.min(size, 1);
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i] != keys[size - 1]) keys[size++] = keys[i];
+		}
+
+		Fuse fuse = Fuse.forSize(size);
+		Random random = new Random(0L);
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			Fuse seeded = fuse.withSeed(random.nextLong());
+			Peeling peeling = seeded.peel(keys, size);
+			if (peeling != null) return new FuseFilter<>(hash, seeded, fingerprints(seeded, peeling));
+		}
+		throw new PerfectionException("failed to construct filter after " + MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Reads a filter that was written with {@link #writeTo(OutputStream)}
+	 * from a filter built with a serializer.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param in
+	 *            the stream from which the filter is read
+	 * @param serializer
+	 *            the serializer with which the filter was built
+	 * @return the filter
+	 * @throws IOException
+	 *             if the filter could not be read
+	 */
+	public static <T> FuseFilter<T> readFrom(InputStream in, StreamSerializer<T> serializer) throws IOException {
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return readFrom(in, serializedHash(serializer));
+	}
+
+	/**
+	 * Reads a filter that was written with {@link #writeTo(OutputStream)}
+	 * from a filter built with an explicit hash.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param in
+	 *            the stream from which the filter is read
+	 * @param hash
+	 *            the hash with which the filter was built
+	 * @return the filter
+	 * @throws IOException
+	 *             if the filter could not be read
+	 */
+	public static <T> FuseFilter<T> readFrom(InputStream in, ToLongFunction<? super T> hash) throws IOException {
+		if (in == null) throw new IllegalArgumentException("null in");
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) throw new IOException("unrecognized filter");
+		Fuse fuse = Fuse.of(data.readLong(), data.readInt(), data.readInt());
+		if (fuse == null || data.readInt() != fuse.arrayLength) throw new IOException("invalid filter");
+		byte[] fingerprints = new byte[fuse.arrayLength];
+		data.readFully(fingerprints);
+		return new FuseFilter<>(hash, fuse, fingerprints);
+	}
+
+	// a hash over serialized values; the buffer is retained per thread to avoid allocation
+	private static <T> ToLongFunction<T> serializedHash(StreamSerializer<T> serializer) {
+		ThreadLocal<SerialBuffer> buffers = ThreadLocal.withInitial(SerialBuffer::new);
+		return value -> buffers.get().serialize(serializer, value).digest();
+	}
+
+	private static int fingerprint(long h) {
+		return (int) (h ^ h >>> 32);
+	}
+
+	// assigns fingerprints in reverse peeling order
+	private static byte[] fingerprints(Fuse fuse, Peeling peeling) {
+		byte[] fingerprints = new byte[fuse.arrayLength];
+		int[] h012 = new int[5];
+		for (int k = peeling.order.length - 1; k >= 0; k--) {
+			long h = peeling.hashes[peeling.order[k]];
+			int found = peeling.found[k];
+			fuse.positions(h, h012);
+			fingerprints[h012[found]] = (byte) (fingerprint(h) ^ fingerprints[h012[found + 1]] ^ fingerprints[h012[found + 2]]);
+		}
+		return fingerprints;
+	}
+
+	// fields
+
+	private final ToLongFunction<? super T> hash;
+	private final Fuse fuse;
+	private final byte[] fingerprints;
+
+	// constructors
+
+	private FuseFilter(ToLongFunction<? super T> hash, Fuse fuse, byte[] fingerprints) {
+		this.hash = hash;
+		this.fuse = fuse;
+		this.fingerprints = fingerprints;
+	}
+
+	// accessors
+
+	/**
+	 * The number of bits occupied by the filter fingerprints.
+	 *
+	 * @return the size of the filter in bits
+	 */
+	public long getBitCount() {
+		return fingerprints.length * 8L;
+	}
+
+	// methods
+
+	/**
+	 * Whether the value might be a member of the domain. The method returns
+	 * true for every domain value, and false for most values outside of the
+	 * domain.
+	 *
+	 * @param value
+	 *            any value
+	 * @return false if the value is certainly not a member of the domain, true
+	 *         otherwise
+	 */
+	public boolean mightContain(T value) {
+		long h = fuse.hash(hash.applyAsLong(value));
+		int f = fingerprint(h) ^ fingerprints[fuse.position(h, 0)] ^ fingerprints[fuse.position(h, 1)] ^ fingerprints[fuse.position(h, 2)];
+		return (f & 0xff) == 0;
+	}
+
+	/**
+	 * Writes the filter to a stream. The means by which values are hashed is
+	 * not written.
+	 *
+	 * @param out
+	 *            the stream to which the filter is written
+	 * @throws IOException
+	 *             if the filter could not be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(fuse.seed);
+		data.writeInt(fuse.segmentLength);
+		data.writeInt(fuse.segmentCount);
+		data.writeInt(fingerprints.length);
+		data.write(fingerprints);
+		data.flush();
+	}
+
+}
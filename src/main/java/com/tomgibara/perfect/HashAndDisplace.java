@@ -0,0 +1,205 @@
+package com.tomgibara.perfect;
+
+import java.util.Collection;
+import java.util.Random;
+
+import com.tomgibara.hashing.HashCode;
+import com.tomgibara.hashing.HashSize;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.ConstructionContext.Timing;
+import com.tomgibara.perfect.ConstructionObserver.Failure;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+// derives a perfect hash into a reduced range from a perfect hash; values are
+// hashed into small buckets, and the buckets, largest first, are each assigned
+// the first displacement that places all of their values into unoccupied
+// positions of the range
+final class HashAndDisplace<E> {
+
+	// statics
+
+	// the average number of values per bucket
+	private static final double BUCKET_SIZE = 4.0;
+	// the number of displacements tried for a bucket before an attempt fails
+	private static final int MAX_DISPLACEMENTS = 1 << 20;
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+	private static int bucket(long fingerprint, long seed, int buckets) {
+		return Digests.reduce(Digests.mix(fingerprint ^ seed), buckets);
+	}
+
+	private static int position(long fingerprint, long seed, int displacement, int range) {
+		return Digests.reduce(Digests.mix(Digests.mix(fingerprint ^ seed) + displacement * GOLDEN), range);
+	}
+
+	// fields
+
+	private final Hasher<E> hasher;
+	private final int range;
+	private final int maxTries;
+	private final Random random;
+	private final ConstructionContext context;
+
+	// constructors
+
+	HashAndDisplace(Hasher<E> hasher, int range, int maxTries, Random random, ConstructionContext context) {
+		this.hasher = hasher;
+		this.range = range;
+		this.maxTries = maxTries;
+		this.random = random;
+		this.context = context;
+	}
+
+	// methods
+
+	Hasher<E> create(Collection<? extends E> elements) {
+		int size = elements.size();
+		if (size > range) throw new IllegalArgumentException("range too small");
+		long[] fingerprints = new long[size];
+		int index = 0;
+		for (E element : elements) {
+			fingerprints[index++] = hasher.longHashValue(element);
+		}
+		int buckets = Math.max(1, (int) Math.ceil(size / BUCKET_SIZE));
+
+		for (int tries = 0; tries < maxTries; tries++) {
+			context.check(Phase.RANGE_REDUCTION, tries, 0L);
+			context.started(Phase.RANGE_REDUCTION, tries);
+			Timing timing = context.start();
+			long seed = random.nextLong();
+			int[] displacements = displace(fingerprints, seed, buckets, tries);
+			timing.stop(Phase.RANGE_REDUCTION);
+			if (displacements == null) {
+				context.failed(Phase.RANGE_REDUCTION, tries, Failure.DISPLACEMENT_EXHAUSTED);
+				continue;
+			}
+			context.succeeded(Phase.RANGE_REDUCTION, tries);
+			return new DisplacedHasher<>(hasher, seed, displacements, range);
+		}
+		throw new PerfectionException("failed to find range reduced hash");
+	}
+
+	// private utility methods
+
+	// returns null if some bucket could not be placed
+	private int[] displace(long[] fingerprints, long seed, int buckets, int attempt) {
+		int size = fingerprints.length;
+
+		// group the values by bucket
+		int[] starts = new int[buckets + 1];
+		int[] bucketOf = new int[size];
+		for (int i = 0; i < size; i++) {
+			int b = bucket(fingerprints[i], seed, buckets);
+			bucketOf[i] = b;
+			starts[b + 1]++;
+		}
+		int maxBucketSize = 0;
+		for (int b = 0; b < buckets; b++) {
+			maxBucketSize = Math.max(maxBucketSize, starts[b + 1]);
+			starts[b + 1] += starts[b];
+		}
+		int[] members = new int[size];
+		int[] cursors = starts.clone();
+		for (int i = 0; i < size; i++) {
+			members[cursors[bucketOf[i]]++] = i;
+		}
+		bucketOf = null;
+
+		// order the buckets by decreasing size
+		int[] counts = new int[maxBucketSize + 2];
+		for (int b = 0; b < buckets; b++) {
+			counts[maxBucketSize - (starts[b + 1] - starts[b]) + 1]++;
+		}
+		for (int s = 1; s < counts.length; s++) {
+			counts[s] += counts[s - 1];
+		}
+		int[] order = new int[buckets];
+		for (int b = 0; b < buckets; b++) {
+			order[counts[maxBucketSize - (starts[b + 1] - starts[b])]++] = b;
+		}
+
+		// place each bucket in turn
+		long[] occupied = new long[(range + 63) >> 6];
+		int[] positions = new int[maxBucketSize];
+		int[] displacements = new int[buckets];
+		for (int k = 0; k < buckets; k++) {
+			if (k % ConstructionContext.CHECK_INTERVAL == 0) context.check(Phase.RANGE_REDUCTION, attempt, k);
+			int b = order[k];
+			int start = starts[b];
+			int count = starts[b + 1] - start;
+			if (count == 0) break; // all remaining buckets are empty
+			int d = 0;
+			for (; d < MAX_DISPLACEMENTS; d++) {
+				if (fits(fingerprints, members, start, count, seed, d, occupied, positions)) break;
+			}
+			if (d == MAX_DISPLACEMENTS) return null;
+			for (int j = 0; j < count; j++) {
+				int p = positions[j];
+				occupied[p >> 6] |= 1L << p;
+			}
+			displacements[b] = d;
+		}
+		return displacements;
+	}
+
+	// records the positions of the bucket members if they are distinct and unoccupied
+	private boolean fits(long[] fingerprints, int[] members, int start, int count, long seed, int d, long[] occupied, int[] positions) {
+		for (int j = 0; j < count; j++) {
+			int p = position(fingerprints[members[start + j]], seed, d, range);
+			if ((occupied[p >> 6] & 1L << p) != 0L) return false;
+			for (int i = 0; i < j; i++) {
+				if (positions[i] == p) return false;
+			}
+			positions[j] = p;
+		}
+		return true;
+	}
+
+	// inner classes
+
+	private static final class DisplacedHasher<E> implements Hasher<E>, Footprint.Measured {
+
+		private final Hasher<E> hasher;
+		private final long seed;
+		private final int[] displacements;
+		private final int range;
+		private final HashSize size;
+
+		DisplacedHasher(Hasher<E> hasher, long seed, int[] displacements, int range) {
+			this.hasher = hasher;
+			this.seed = seed;
+			this.displacements = displacements;
+			this.range = range;
+			this.size = HashSize.fromInt(range);
+		}
+
+		@Override
+		public HashSize getSize() {
+			return size;
+		}
+
+		@Override
+		public HashCode hash(E e) throws IllegalArgumentException {
+			return HashCode.fromInt(intHashValue(e));
+		}
+
+		@Override
+		public int intHashValue(E e) {
+			long fingerprint = hasher.longHashValue(e);
+			int d = displacements[bucket(fingerprint, seed, displacements.length)];
+			return position(fingerprint, seed, d, range);
+		}
+
+		@Override
+		public long longHashValue(E e) {
+			return intHashValue(e);
+		}
+
+		@Override
+		public long heapBytes() {
+			return Footprint.objectBytes(28) + Footprint.arrayBytes(displacements.length, 4) + Footprint.hasherBytes(hasher);
+		}
+
+	}
+
+}
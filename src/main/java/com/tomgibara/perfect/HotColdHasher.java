@@ -0,0 +1,195 @@
+package com.tomgibara.perfect;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+import com.tomgibara.hashing.HashCode;
+import com.tomgibara.hashing.HashSize;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.BMZ.Edges;
+import com.tomgibara.perfect.BMZ.Table;
+
+// a minimal hash that assigns the lowest hash values to a designated set of
+// hot values; the hot values are hashed by a small minimal hash, each hash
+// value of which records the perfect hash of the hot value to which it was
+// assigned, so that hot lookups are confirmed without reference to the larger
+// minimal hash over the remaining cold values; the perfect hash of a value is
+// computed once per lookup and supplies the edges of both minimal hashes
+final class HotColdHasher<E> implements Hasher<E>, Footprint.Measured {
+
+	// statics
+
+	// the hot values are those with the greatest access counts
+	static <E> HotColdHasher<E> create(Hasher<E> perfect, Collection<? extends E> elements, ToLongFunction<? super E> accesses, int hotCount, int maxTries, double c, Random random, ConstructionContext context) {
+		int size = elements.size();
+		long[] counts = new long[size];
+		int index = 0;
+		for (E element : elements) {
+			counts[index++] = accesses.applyAsLong(element);
+		}
+		// retain the indices of the hottest elements, coldest at the head
+		PriorityQueue<Integer> hottest = new PriorityQueue<>(Math.max(hotCount, 1), (i, j) -> Long.compare(counts[i], counts[j]));
+		for (int i = 0; i < size && hotCount > 0; i++) {
+			if (hottest.size() < hotCount) {
+				hottest.add(i);
+			} else if (counts[i] > counts[hottest.peek()]) {
+				hottest.poll();
+				hottest.add(i);
+			}
+		}
+		BitSet hotIndices = new BitSet(size);
+		for (int i : hottest) {
+			hotIndices.set(i);
+		}
+		hottest = null;
+
+		// the perfect hashes of the hot and cold elements
+		long[] hot = new long[hotCount];
+		long[] cold = new long[size - hotCount];
+		int hotIndex = 0;
+		int coldIndex = 0;
+		index = 0;
+		for (E element : elements) {
+			long key = perfect.longHashValue(element);
+			if (hotIndices.get(index++)) {
+				hot[hotIndex++] = key;
+			} else {
+				cold[coldIndex++] = key;
+			}
+		}
+
+		Part<E> hotPart = null;
+		long[] hotKeys = null;
+		int attempts = 0;
+		if (hot.length > 0) {
+			BMZ<Integer> bmz = new BMZ<>(edges(perfect, hot), maxTries, c, random, context);
+			hotPart = new Part<>(perfect, bmz.table(BMZ.indices(hot.length)));
+			attempts += bmz.getAttempts();
+			hotKeys = new long[hot.length];
+			for (long key : hot) {
+				hotKeys[hotPart.index(fold(key))] = key;
+			}
+			// a cold value would be mistaken for a hot value with the same perfect hash
+			for (long key : cold) {
+				int i = hotPart.index(fold(key));
+				if (i >= 0 && i < hotKeys.length && hotKeys[i] == key) throw new PerfectionException("cold value indistinguishable from hot value");
+			}
+		}
+		Part<E> coldPart = null;
+		if (cold.length > 0) {
+			BMZ<Integer> bmz = new BMZ<>(edges(perfect, cold), maxTries, c, random, context);
+			coldPart = new Part<>(perfect, bmz.table(BMZ.indices(cold.length)));
+			attempts += bmz.getAttempts();
+		}
+		return new HotColdHasher<>(perfect, hotPart, hotKeys, coldPart, size, attempts);
+	}
+
+	// the edges of the elements with the specified perfect hashes
+	private static <E> BMZ.EdgeFactory<Integer> edges(Hasher<E> perfect, long[] keys) {
+		return (seed1, seed2, vertices) -> {
+			Edges<E> edges = new Edges<>(perfect, seed1, seed2, vertices);
+			return i -> edges.edgeOfHash(fold(keys[i]));
+		};
+	}
+
+	private static int fold(long key) {
+		return (int) (key ^ key >>> 32);
+	}
+
+	// fields
+
+	private final Hasher<E> perfect;
+	// null if there are no hot values
+	private final Part<E> hot;
+	// the perfect hash of the hot value assigned to each hot hash value
+	private final long[] hotKeys;
+	// null if there are no cold values
+	private final Part<E> cold;
+	private final int hotCount;
+	private final HashSize size;
+	private final int attempts;
+
+	// constructors
+
+	private HotColdHasher(Hasher<E> perfect, Part<E> hot, long[] hotKeys, Part<E> cold, int size, int attempts) {
+		this.perfect = perfect;
+		this.hot = hot;
+		this.hotKeys = hotKeys;
+		this.cold = cold;
+		this.hotCount = hotKeys == null ? 0 : hotKeys.length;
+		this.size = HashSize.fromInt(size);
+		this.attempts = attempts;
+	}
+
+	// accessors
+
+	// the total number of attempts made to construct the hot and cold hashes
+	int getAttempts() {
+		return attempts;
+	}
+
+	// methods
+
+	@Override
+	public HashSize getSize() {
+		return size;
+	}
+
+	@Override
+	public HashCode hash(E e) throws IllegalArgumentException {
+		return HashCode.fromInt(intHashValue(e));
+	}
+
+	@Override
+	public int intHashValue(E e) {
+		long key = perfect.longHashValue(e);
+		int hc = fold(key);
+		if (hot != null) {
+			int i = hot.index(hc);
+			// without cold values, every value is hot
+			if (cold == null || i >= 0 && i < hotCount && hotKeys[i] == key) return i;
+		}
+		return hotCount + cold.index(hc);
+	}
+
+	@Override
+	public long longHashValue(E e) {
+		return intHashValue(e);
+	}
+
+	@Override
+	public long heapBytes() {
+		long bytes = Footprint.objectBytes(32) + Footprint.hasherBytes(perfect);
+		if (hot != null) bytes += hot.heapBytes() + Footprint.arrayBytes(hotKeys.length, 8);
+		if (cold != null) bytes += cold.heapBytes();
+		return bytes;
+	}
+
+	// inner classes
+
+	// a minimal hash over the perfect hashes of the hot or cold values
+	private static final class Part<E> {
+
+		private final Edges<E> edges;
+		private final int[] g;
+
+		Part(Hasher<E> perfect, Table table) {
+			edges = new Edges<>(perfect, table.seed1, table.seed2, table.g.length);
+			g = table.g;
+		}
+
+		int index(int hc) {
+			long ab = edges.edgeOfHash(hc);
+			return g[BMZ.a(ab)] + g[BMZ.b(ab)];
+		}
+
+		long heapBytes() {
+			return Footprint.objectBytes(8) + Footprint.arrayBytes(g.length, 4);
+		}
+
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.tomgibara.perfect;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+import java.util.stream.StreamSupport;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+// identifies duplicates among the long values derived from a collection
+// no objects are allocated per value; small value ranges are checked with a
+// bitmap, otherwise values are sorted in partitions of bounded size, making one
+// pass over the collection per partition; memory use and the number of passes
+// are bounded by the memory budget of the construction context, if any
+class LongUniquenessChecker<T> implements DuplicateFinder<T> {
+
+	static final int DEFAULT_MAX_PARTITION_SIZE = 1 << 25;
+	// prevents small memory budgets from requiring an excessive number of passes
+	static final int MIN_PARTITION_SIZE = 1 << 12;
+
+	private static final int BITMAP_MAX_BITS = 32;
+
+	// sorts the hash values in partitions that fit within the budget
+	private static int maxPartitionSize(long memoryBudget) {
+		if (memoryBudget < 0L) return DEFAULT_MAX_PARTITION_SIZE;
+		return (int) Math.max(MIN_PARTITION_SIZE, Math.min(DEFAULT_MAX_PARTITION_SIZE, memoryBudget >> 3));
+	}
+
+	private final Collection<? extends T> values;
+	private final boolean parallel;
+	private final int maxPartitionSize;
+	// negative if memory is not limited
+	private final long memoryBudget;
+	private final ConstructionContext context;
+	private final Phase phase;
+
+	private LongUniquenessChecker(Collection<? extends T> values, boolean parallel, int maxPartitionSize, long memoryBudget, ConstructionContext context, Phase phase) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (maxPartitionSize < 1) throw new IllegalArgumentException("non-positive maxPartitionSize");
+		this.values = values;
+		this.parallel = parallel;
+		this.maxPartitionSize = maxPartitionSize;
+		this.memoryBudget = memoryBudget;
+		this.context = context;
+		this.phase = phase;
+	}
+
+	LongUniquenessChecker(Collection<? extends T> values, boolean parallel, ConstructionContext context, Phase phase) {
+		this(values, parallel, maxPartitionSize(context.limits.memoryBudget()), context.limits.memoryBudget(), context, phase);
+	}
+
+	LongUniquenessChecker(Collection<? extends T> values, boolean parallel, int maxPartitionSize) {
+		this(values, parallel, maxPartitionSize, -1L, ConstructionContext.NONE, null);
+	}
+
+	LongUniquenessChecker(Collection<? extends T> values, boolean parallel) {
+		this(values, parallel, DEFAULT_MAX_PARTITION_SIZE);
+	}
+
+	@Override
+	public long[] duplicates(ToLongFunction<? super T> fn, int bits, int limit) {
+		if (fn == null) throw new IllegalArgumentException("null fn");
+		if (bits < 1 || bits > 64) throw new IllegalArgumentException("invalid bits");
+		if (limit < 1) throw new IllegalArgumentException("non-positive limit");
+		if (bits < 64) {
+			long mask = (1L << bits) - 1L;
+			ToLongFunction<? super T> unmasked = fn;
+			fn = v -> unmasked.applyAsLong(v) & mask;
+		}
+		long count = values.size();
+		// use a bitmap if it would occupy no more memory than sorting the values, nor exceed the budget
+		if (bits <= BITMAP_MAX_BITS && 1L << bits <= count << 6 && (memoryBudget < 0L || (1L << bits) >> 3 <= memoryBudget)) {
+			return bitmapDuplicates(fn, 1L << bits, limit);
+		}
+		// otherwise partition on the highest bits of the values
+		int partitionBits = 0;
+		while (partitionBits < Math.min(bits, 30) && count > (long) maxPartitionSize << partitionBits) partitionBits++;
+		Longs dupes = new Longs(limit);
+		for (int p = 0; p < 1 << partitionBits && !dupes.isFull(); p++) {
+			context.check(phase, 0, p * count);
+			sortedDuplicates(partition(fn, bits, partitionBits, p), dupes);
+		}
+		return dupes.toSortedArray();
+	}
+
+	// private utility methods
+
+	private long[] bitmapDuplicates(ToLongFunction<? super T> fn, long size, int limit) {
+		Longs dupes = new Longs(limit);
+		if (parallel) {
+			ConcurrentBitmap bitmap = new ConcurrentBitmap(size);
+			StreamSupport.stream(values.spliterator(), true).mapToLong(fn).anyMatch(value ->
+				bitmap.getThenSet(value) && dupes.addAndCheckFull(value)
+			);
+		} else {
+			long[] words = new long[(int) ((size + 63) >> 6)];
+			for (T value : values) {
+				long v = fn.applyAsLong(value);
+				int i = (int) (v >>> 6);
+				long mask = 1L << v;
+				if ((words[i] & mask) != 0L) {
+					if (dupes.addAndCheckFull(v)) break;
+				} else {
+					words[i] |= mask;
+				}
+			}
+		}
+		return dupes.toSortedArray();
+	}
+
+	// the sorted values that lie in the specified partition
+	private long[] partition(ToLongFunction<? super T> fn, int bits, int partitionBits, int p) {
+		int shift = bits - partitionBits;
+		long[] array;
+		if (parallel) {
+			array = StreamSupport.stream(values.spliterator(), true).mapToLong(fn)
+					.filter(v -> partitionBits == 0 || v >>> shift == p).toArray();
+			Arrays.parallelSort(array);
+		} else {
+			array = new long[partitionBits == 0 ? values.size() : (values.size() >> partitionBits) + 64];
+			int length = 0;
+			for (T value : values) {
+				long v = fn.applyAsLong(value);
+				if (partitionBits != 0 && v >>> shift != p) continue;
+				if (length == array.length) array = Arrays.copyOf(array, Math.max(16, length + (length >> 1)));
+				array[length++] = v;
+			}
+			if (length < array.length) array = Arrays.copyOf(array, length);
+			Arrays.sort(array);
+		}
+		return array;
+	}
+
+	private static void sortedDuplicates(long[] sorted, Longs dupes) {
+		for (int i = 1; i < sorted.length; i++) {
+			long v = sorted[i];
+			if (v == sorted[i - 1] && (i == 1 || v != sorted[i - 2])) {
+				if (dupes.addAndCheckFull(v)) return;
+			}
+		}
+	}
+
+	// inner classes
+
+	// accumulates a bounded number of distinct values
+	static final class Longs {
+
+		private final int limit;
+		private long[] values = new long[4];
+		private int size = 0;
+
+		Longs(int limit) {
+			this.limit = limit;
+		}
+
+		boolean isFull() {
+			return size >= limit;
+		}
+
+		synchronized boolean addAndCheckFull(long value) {
+			if (size >= limit) return true;
+			for (int i = 0; i < size; i++) {
+				if (values[i] == value) return false;
+			}
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+			return size >= limit;
+		}
+
+		synchronized long[] toSortedArray() {
+			long[] array = Arrays.copyOf(values, size);
+			Arrays.sort(array);
+			return array;
+		}
+	}
+
+}
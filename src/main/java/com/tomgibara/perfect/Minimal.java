@@ -1,7 +1,11 @@
 package com.tomgibara.perfect;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
 
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.permute.Permutation;
@@ -23,11 +27,29 @@ import com.tomgibara.storage.StoreType;
  */
 public class Minimal<T> extends DomainHash<T> {
 
-	private Permutation permutation = null;
-	private Store<T> store = null;
+	// the least number of random access domain values that are hashed in parallel during population
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private final boolean compact;
+	// null if the hash was not constructed by minimization
+	private final MinimizationParameters parameters;
+	// lazily assigned under the lock of this object
+	private volatile Permutation permutation = null;
+	private volatile Store<T> store = null;
+	private volatile CompactKeys<T> compactKeys = null;
 
 	Minimal(Hasher<T> hasher, PerfectDomain<T> domain) {
+		this(hasher, domain, null, false);
+	}
+
+	Minimal(Hasher<T> hasher, PerfectDomain<T> domain, MinimizationParameters parameters) {
+		this(hasher, domain, parameters, false);
+	}
+
+	private Minimal(Hasher<T> hasher, PerfectDomain<T> domain, MinimizationParameters parameters, boolean compact) {
 		super(hasher, domain);
+		this.parameters = parameters;
+		this.compact = compact;
 	}
 
 	// accessors
@@ -51,16 +73,35 @@ public class Minimal<T> extends DomainHash<T> {
 		return domain;
 	}
 
+	/**
+	 * The parameters with which this hash was constructed from a perfect hash.
+	 * Parameters are not available for hashes that were loaded from a
+	 * {@link MinimalCache}.
+	 *
+	 * @return the parameters used to construct this hash, or empty
+	 */
+	public Optional<MinimizationParameters> getParameters() {
+		return Optional.ofNullable(parameters);
+	}
+
 	/**
 	 * The permutation induced by this minimal hash. The returned permutation
 	 * has the characteristic that n -&gt; m iff the hash of the domain element at
 	 * index n is m.
 	 *
+	 * <p>
+	 * The permutation is computed on first access; for large domains that
+	 * support random access, domain values are hashed in parallel.
+	 *
 	 * @return the permutation of the domain induced by the hash.
 	 */
 	public Permutation getPermutation() {
+		Permutation permutation = this.permutation;
 		if (permutation == null) {
-			populate();
+			synchronized (this) {
+				if (this.permutation == null) populate(null);
+				permutation = this.permutation;
+			}
 		}
 		return permutation;
 	}
@@ -69,25 +110,91 @@ public class Minimal<T> extends DomainHash<T> {
 	 * The elements of the domain organized such that each elements index in the
 	 * store is equal to its hash value.
 	 *
+	 * <p>
+	 * The store is populated on first access; for large domains that support
+	 * random access, domain values are hashed and stored in parallel.
+	 *
 	 * @return the domain elements ordered by hash value.
 	 */
 	public Store<T> getStore() {
+		Store<T> store = this.store;
 		if (store == null) {
-			Optional<Class<T>> optionalType = domain.getType();
-			StoreType<T> storeType;
-			if (optionalType.isPresent()) {
-				Class<T> type = optionalType.get();
-				storeType = StoreType.of(type).settingNullToDefault();
-			} else {
-				storeType = StoreType.generic();
+			synchronized (this) {
+				if (this.store == null) {
+					Optional<Class<T>> optionalType = domain.getType();
+					StoreType<T> storeType;
+					if (optionalType.isPresent()) {
+						Class<T> type = optionalType.get();
+						storeType = StoreType.of(type).settingNullToDefault();
+					} else {
+						storeType = StoreType.generic();
+					}
+					Store<T> target = storeType.storage().newStore(domain.getValues().size());
+					populate(target);
+					this.store = target.immutableView();
+				}
+				store = this.store;
 			}
-			store = storeType.storage().newStore(domain.getValues().size());
-			populate();
-			store = store.immutableView();
 		}
 		return store;
 	}
 
+	/**
+	 * <p>
+	 * The elements of the domain encoded compactly into a single byte arena
+	 * and ordered by hash value. This is only available for domains that
+	 * consist entirely of strings or entirely of byte arrays.
+	 *
+	 * <p>
+	 * For large domains, the keys returned by this method may consume a small
+	 * fraction of the memory required by {@link #getStore()}, but do so at the
+	 * cost of decoding each key on access.
+	 *
+	 * @return the domain elements compactly encoded
+	 * @throws IllegalStateException
+	 *             if the domain values are not all strings or not all byte
+	 *             arrays
+	 */
+	public CompactKeys<T> getCompactKeys() {
+		CompactKeys<T> compactKeys = this.compactKeys;
+		if (compactKeys == null) {
+			synchronized (this) {
+				if (this.compactKeys == null) this.compactKeys = CompactKeys.build(hasher, domain.getValues());
+				compactKeys = this.compactKeys;
+			}
+		}
+		return compactKeys;
+	}
+
+	/**
+	 * Whether the sets, maps and tables created by this minimal hash verify
+	 * their keys against {@link #getCompactKeys()} rather than
+	 * {@link #getStore()}.
+	 *
+	 * @return true if compact keys are used, false otherwise
+	 * @see #withCompactKeys()
+	 */
+	public boolean isUsingCompactKeys() {
+		return compact;
+	}
+
+	/**
+	 * A minimal hash, identical to this one, but for which the sets, maps and
+	 * tables it creates record their keys via {@link #getCompactKeys()}. This
+	 * avoids retaining every domain value as a separate object. The returned
+	 * hash will fail to create sets, maps and tables if the domain values are
+	 * not all strings or not all byte arrays.
+	 *
+	 * @return a minimal hash that uses compact keys
+	 */
+	public Minimal<T> withCompactKeys() {
+		if (compact) return this;
+		Minimal<T> minimal = new Minimal<>(hasher, domain, parameters, true);
+		minimal.permutation = permutation;
+		minimal.compactKeys = compactKeys;
+		return minimal;
+	}
+
 	// methods
 
 	/**
@@ -107,6 +214,29 @@ public class Minimal<T> extends DomainHash<T> {
 		return new MinimalSet<>(this);
 	}
 
+	/**
+	 * <p>
+	 * Creates a new table with a column of primitive values for each of the
+	 * specified types. The tables created by this method each, at creation
+	 * time, allocate a value in every column for each element of the domain
+	 * associated with this minimal hash.
+	 *
+	 * <p>
+	 * Tables of this nature are useful when several values need to be
+	 * maintained for each key; a key is hashed and verified only once, after
+	 * which its row can be used to access any number of columns.
+	 *
+	 * @param columnTypes
+	 *            the types of the table columns, each one of {@code int.class},
+	 *            {@code long.class}, {@code double.class} or
+	 *            {@code boolean.class}
+	 * @return a table of zeroed primitive columns
+	 */
+	public MinimalTable<T> newTable(Class<?>... columnTypes) {
+		MinimalTable.checkColumnTypes(columnTypes);
+		return new MinimalTable<>(this, columnTypes);
+	}
+
 	/**
 	 * A means for creating maps mapping elements of the hash domain to the
 	 * specified storage.
@@ -192,30 +322,75 @@ public class Minimal<T> extends DomainHash<T> {
 		return new Maps<>(StoreType.of(type).settingNullToValue(nullValue).storage());
 	}
 
+	/**
+	 * <p>
+	 * An estimate of the memory occupied by this minimal hash. The footprint
+	 * includes the hasher, and the store, compact keys and permutation, if
+	 * they have been computed; components that have not been computed are
+	 * omitted.
+	 *
+	 * <p>
+	 * The domain values referenced from the store are not included, nor is
+	 * the memory occupied by sets and maps created from this hash (see
+	 * {@link MinimalSet#footprint()} and {@link MinimalMap#footprint()}).
+	 *
+	 * @return the footprint of this hash
+	 */
+	public Footprint footprint() {
+		int size = domain.getValues().size();
+		List<Footprint.Component> components = new ArrayList<>(4);
+		components.add(new Footprint.Component("hasher", Footprint.hasherBytes(hasher), 0L));
+		Store<T> store = this.store;
+		if (store != null) components.add(new Footprint.Component("keys", Footprint.storeBytes(store), 0L));
+		CompactKeys<T> compactKeys = this.compactKeys;
+		if (compactKeys != null) components.add(new Footprint.Component("compactKeys", compactKeys.heapBytes(), 0L));
+		// estimated as an array of the images of the permutation
+		if (permutation != null) components.add(new Footprint.Component("permutation", Footprint.arrayBytes(size, 4), 0L));
+		return new Footprint(size, components);
+	}
+
+	// package scoped methods
+
+	DomainKeys<T> getKeys() {
+		return compact ? getCompactKeys() : DomainKeys.of(getStore());
+	}
+
 	// private utility methods
 
-	private void populate() {
+	// computes the permutation if necessary, populating the store if supplied
+	private void populate(Store<T> store) {
 		Collection<? extends T> values = domain.getValues();
-		int count = 0;
-		if (permutation == null) {
-			// if store has been assigned, it's a signal to populate it
-			// otherwise only the permutation is required
-			int[] order = new int[values.size()];
-			for (T value : values) {
-				int index = hasher.intHashValue(value);
-				order[count++] = index;
-				if (store != null) store.set(index, value);
-			}
-			permutation = Permutation.reorder(order);
-		} else {
+		if (permutation != null) {
 			// permutation has already been computed
 			// so this call must be intended to populate store
 			// we use the permutation to make this faster
+			int count = 0;
 			for (T value : values) {
 				store.set(count++, value);
 			}
 			permutation.permute(store);
+			return;
+		}
+		int size = values.size();
+		int[] order = new int[size];
+		if (size >= PARALLEL_THRESHOLD && values instanceof List && values instanceof RandomAccess) {
+			List<? extends T> list = (List<? extends T>) values;
+			// only the hashing is parallel, since stores are not safe for concurrent modification
+			IntStream.range(0, size).parallel().forEach(i -> order[i] = hasher.intHashValue(list.get(i)));
+			if (store != null) {
+				for (int i = 0; i < size; i++) {
+					store.set(order[i], list.get(i));
+				}
+			}
+		} else {
+			int count = 0;
+			for (T value : values) {
+				int index = hasher.intHashValue(value);
+				order[count++] = index;
+				if (store != null) store.set(index, value);
+			}
 		}
+		permutation = Permutation.reorder(order);
 	}
 
 	// inner classes
@@ -251,8 +426,8 @@ public class Minimal<T> extends DomainHash<T> {
 		 * @return a new empty map
 		 */
 		public MinimalMap<T,V> newMap() {
-			Store<T> store = getStore();
-			return new MinimalMap<>(hasher, store, storage.newStore(store.size()));
+			DomainKeys<T> keys = getKeys();
+			return new MinimalMap<>(hasher, keys, storage.newStore(keys.size()));
 		}
 
 	}
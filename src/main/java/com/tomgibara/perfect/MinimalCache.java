@@ -0,0 +1,383 @@
+package com.tomgibara.perfect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.hashing.Hashing;
+import com.tomgibara.perfect.BMZ.BMZHasher;
+import com.tomgibara.streams.StreamSerializer;
+
+/**
+ * <p>
+ * A cache of minimal perfect hashes held in a local directory. Minimal hashes
+ * obtained through a cache are constructed deterministically and then
+ * persisted, so that subsequent requests for a hash over the same domain,
+ * whether made by the same process after a restart or by other processes
+ * sharing the directory, load the hash from disk instead of constructing it.
+ *
+ * <p>
+ * Cache entries are keyed by a SHA-256 digest computed over the serialized
+ * form of every domain value together with the algorithms and parameters used
+ * for construction. Computing the digest requires a single pass over the
+ * domain. Only the data that defines the hash function is persisted; the
+ * store of domain values ordered by hash (see {@link Minimal#getStore()}) is
+ * populated from the domain as usual, when it is first required.
+ *
+ * <p>
+ * The total size of the cache files is bounded; when storing an entry would
+ * exceed the bound, the least recently used entries are evicted. Failures to
+ * write to the cache are ignored, and entries that cannot be read are
+ * discarded and rebuilt, so that the cache never prevents a hash from being
+ * constructed.
+ *
+ * @author Tom Gibara
+ */
+
+public final class MinimalCache {
+
+	// statics
+
+	private static final int MAGIC = 0x50484331; // "PHC1"
+	private static final int VERSION = 1;
+	private static final String ALGORITHMS = "murmur3Int/BMZ";
+	private static final String SUFFIX = ".mph";
+
+	private static final long DEFAULT_SEED = 0L;
+	private static final int DEFAULT_MAX_SEED_ATTEMPTS = 3;
+	private static final int DEFAULT_MAX_ATTEMPTS = 100;
+	private static final double DEFAULT_C = 1.15;
+
+	/**
+	 * Creates a cache that stores hashes in the specified directory, which is
+	 * created if necessary.
+	 *
+	 * @param directory
+	 *            the directory in which cache files are stored
+	 * @param maxBytes
+	 *            the maximum total size of the cache files
+	 * @return a cache over the directory
+	 * @throws UncheckedIOException
+	 *             if the directory could not be created
+	 */
+
+	public static MinimalCache in(Path directory, long maxBytes) {
+		if (directory == null) throw new IllegalArgumentException("null directory");
+		if (maxBytes < 0L) throw new IllegalArgumentException("negative maxBytes");
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new MinimalCache(directory, maxBytes);
+	}
+
+	// fields
+
+	private final Path directory;
+	private final long maxBytes;
+
+	// constructors
+
+	private MinimalCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	// accessors
+
+	/**
+	 * The directory in which cache files are stored.
+	 *
+	 * @return the cache directory
+	 */
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * The maximum total size of the cache files.
+	 *
+	 * @return the maximum number of bytes occupied by the cache
+	 */
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	// methods
+
+	/**
+	 * Obtains a minimal perfect hash over the domain using default parameters.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param domain
+	 *            the domain over which the hash is defined
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @return a minimal perfect hash over the domain
+	 * @throws PerfectionException
+	 *             if the hash was not cached and could not be constructed
+	 * @see #minimized(PerfectDomain, StreamSerializer, long, int, int, double)
+	 */
+
+	public <T> Minimal<T> minimized(PerfectDomain<T> domain, StreamSerializer<T> serializer) throws PerfectionException {
+		return minimized(domain, serializer, DEFAULT_SEED, DEFAULT_MAX_SEED_ATTEMPTS, DEFAULT_MAX_ATTEMPTS, DEFAULT_C);
+	}
+
+	/**
+	 * Obtains a minimal perfect hash over the domain. If the cache contains a
+	 * hash over the same domain values, constructed with the same parameters,
+	 * it is loaded; otherwise the hash is constructed as if by
+	 * <code>domain.using(maxSeedAttempts, new Random(seed)).perfect(serializer).minimizedWithBMZ(maxAttempts, c)</code>
+	 * and stored in the cache.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param domain
+	 *            the domain over which the hash is defined
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param seed
+	 *            seeds the randomness used to construct the hash
+	 * @param maxSeedAttempts
+	 *            the maximum number of attempts that will be made to produce a
+	 *            perfect hash
+	 * @param maxAttempts
+	 *            the greatest number of attempts that the BMZ algorithm should
+	 *            make to produce a minimal hash
+	 * @param c
+	 *            a multiple, not less than 1.0, that limits the memory used to
+	 *            define the resulting hash
+	 * @return a minimal perfect hash over the domain
+	 * @throws PerfectionException
+	 *             if the hash was not cached and could not be constructed
+	 */
+
+	public <T> Minimal<T> minimized(PerfectDomain<T> domain, StreamSerializer<T> serializer, long seed, int maxSeedAttempts, int maxAttempts, double c) throws PerfectionException {
+		if (domain == null) throw new IllegalArgumentException("null domain");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		if (maxSeedAttempts < 1) throw new IllegalArgumentException("maxSeedAttempts not positive");
+		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts not positive");
+		if (c < 1.0) throw new IllegalArgumentException("c less than 1.0");
+
+		MessageDigest md = newDigest();
+		SerialBuffer buffer = new SerialBuffer();
+		int size = 0;
+		for (T value : domain.getValues()) {
+			buffer.serialize(serializer, value);
+			int length = buffer.length();
+			md.update((byte) (length >> 24));
+			md.update((byte) (length >> 16));
+			md.update((byte) (length >>  8));
+			md.update((byte)  length       );
+			md.update(buffer.bytes(), 0, length);
+			size++;
+		}
+		updateParameters(md, size, seed, maxSeedAttempts, maxAttempts, c);
+		byte[] digest = md.digest();
+		Path path = directory.resolve(toHex(digest) + SUFFIX);
+
+		Minimal<T> minimal = load(path, digest, size, domain, serializer);
+		if (minimal != null) return minimal;
+
+		Perfect<T> perfect = domain.using(maxSeedAttempts, new Random(seed)).perfect(serializer);
+		minimal = perfect.minimizedWithBMZ(maxAttempts, c);
+		store(path, digest, size, perfect.getSeed(), (BMZHasher<T>) minimal.getHasher());
+		return minimal;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+
+	public void clear() {
+		for (Path path : entries()) {
+			delete(path);
+		}
+	}
+
+	// private utility methods
+
+	private <T> Minimal<T> load(Path path, byte[] digest, int size, PerfectDomain<T> domain, StreamSerializer<T> serializer) {
+		if (!Files.isRegularFile(path)) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("unrecognized cache file");
+			byte[] stored = new byte[digest.length];
+			in.readFully(stored);
+			if (!Arrays.equals(digest, stored) || in.readInt() != size) throw new IOException("mismatched cache file");
+			Hasher<T> perfect = in.readBoolean() ?
+					Hashing.murmur3Int((int) in.readLong()).hasher(serializer) :
+					Hashing.murmur3Int().hasher(serializer);
+			int seed1 = in.readInt();
+			int seed2 = in.readInt();
+			int[] g = new int[in.readInt()];
+			for (int i = 0; i < g.length; i++) {
+				g[i] = in.readInt();
+			}
+			if (in.read() != -1) throw new IOException("trailing data in cache file");
+			touch(path);
+			return new Minimal<>(new BMZHasher<>(perfect, seed1, seed2, g, size), domain);
+		} catch (IOException | RuntimeException e) {
+			// the entry is unusable and will be replaced
+			delete(path);
+			return null;
+		}
+	}
+
+	private void store(Path path, byte[] digest, int size, OptionalLong seed, BMZHasher<?> hasher) {
+		int[] g = hasher.getG();
+		long length = 4 + 4 + digest.length + 4 + 1 + (seed.isPresent() ? 8 : 0) + 4 + 4 + 4 + 4L * g.length;
+		if (length > maxBytes) return;
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(directory, "perfect-", ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.write(digest);
+				out.writeInt(size);
+				out.writeBoolean(seed.isPresent());
+				if (seed.isPresent()) out.writeLong(seed.getAsLong());
+				out.writeInt(hasher.getSeed1());
+				out.writeInt(hasher.getSeed2());
+				out.writeInt(g.length);
+				for (int v : g) {
+					out.writeInt(v);
+				}
+			}
+			evict(maxBytes - length);
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} catch (IOException e) {
+			/* the cache is optional */
+		} finally {
+			if (temp != null) delete(temp);
+		}
+	}
+
+	// removes the least recently used entries until the cache occupies no more than the specified number of bytes
+	private void evict(long bytes) {
+		List<Path> paths = entries();
+		List<Entry> entries = new ArrayList<>(paths.size());
+		long total = 0L;
+		for (Path path : paths) {
+			try {
+				Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path));
+				entries.add(entry);
+				total += entry.size;
+			} catch (IOException e) {
+				/* the entry was probably removed concurrently */
+			}
+		}
+		if (total <= bytes) return;
+		entries.sort(Comparator.comparing(e -> e.lastUsed));
+		for (Entry entry : entries) {
+			if (total <= bytes) break;
+			delete(entry.path);
+			total -= entry.size;
+		}
+	}
+
+	private List<Path> entries() {
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path path : stream) {
+				paths.add(path);
+			}
+		} catch (IOException e) {
+			/* treat as empty */
+		}
+		return paths;
+	}
+
+	private static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			/* only affects eviction order */
+		}
+	}
+
+	private static void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			/* nothing we can do */
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void updateParameters(MessageDigest md, int size, long seed, int maxSeedAttempts, int maxAttempts, double c) {
+		byte[] algorithms = ALGORITHMS.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + algorithms.length + 4 + 8 + 4 + 4 + 8);
+		buffer.putInt(VERSION);
+		buffer.putInt(algorithms.length).put(algorithms);
+		buffer.putInt(size);
+		buffer.putLong(seed);
+		buffer.putInt(maxSeedAttempts);
+		buffer.putInt(maxAttempts);
+		buffer.putDouble(c);
+		md.update(buffer.array());
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	// inner classes
+
+	private static final class Entry {
+
+		final Path path;
+		final long size;
+		final FileTime lastUsed;
+
+		Entry(Path path, long size, FileTime lastUsed) {
+			this.path = path;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+
+	}
+
+}
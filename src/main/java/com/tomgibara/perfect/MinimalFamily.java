@@ -0,0 +1,456 @@
+package com.tomgibara.perfect;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import com.tomgibara.hashing.HashCode;
+import com.tomgibara.hashing.HashSize;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.BMZ.Table;
+import com.tomgibara.streams.StreamSerializer;
+
+/**
+ * <p>
+ * A family of minimal perfect hashes, one for each of many small domains,
+ * constructed together. Instances are obtained via
+ * {@link #build(Map, StreamSerializer)}.
+ *
+ * <p>
+ * Constructing and retaining a separate {@link Minimal} for each of tens of
+ * thousands of small domains incurs a significant per-domain overhead. A
+ * family avoids this by recording the hash tables of all its domains in a
+ * single shared array, and the keys of all its domains, ordered by hash value,
+ * in a single shared key array. The only additional state recorded per domain
+ * is five integers and an entry in an open-addressed index of domain
+ * identifiers, between 32 and 40 bytes in total, excluding the identifiers
+ * themselves. Hashers and {@link Minimal} instances for individual domains
+ * are lightweight views that are created on demand.
+ *
+ * <p>
+ * Each domain is hashed in the manner of
+ * {@link Perfect#minimizedWithBMZ(int, double)}, but over seeded 64 bit
+ * digests of the serialized domain values, and without constructing any
+ * intermediate objects for the domain. Lookups via
+ * {@link #indexOf(Object, Object)} compute the digest and edge of a value
+ * directly from the seeds and shared arrays of its domain, and allocate no
+ * per-domain objects. Families are safe for concurrent use by multiple
+ * threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of key by which domains are identified
+ * @param <T>
+ *            the type of values in each domain
+ */
+public final class MinimalFamily<K, T> {
+
+	// statics
+
+	private static final long DEFAULT_SEED = 0L;
+	private static final int DEFAULT_MAX_SEED_ATTEMPTS = 3;
+	private static final int DEFAULT_MAX_ATTEMPTS = 100;
+	private static final double DEFAULT_C = 1.15;
+	// decorrelates the randomness used for each domain
+	private static final long SEED_STRIDE = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Constructs a family of minimal hashes over the supplied domains using
+	 * default parameters.
+	 *
+	 * @param <K>
+	 *            the type of key by which domains are identified
+	 * @param <T>
+	 *            the type of values in each domain
+	 * @param domains
+	 *            the non-empty domains, keyed by identifier
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @return a family of minimal hashes over the domains
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed for some domain
+	 * @see #build(Map, StreamSerializer, long, int, int, double, boolean)
+	 */
+	public static <K, T> MinimalFamily<K, T> build(Map<K, ? extends Collection<? extends T>> domains, StreamSerializer<T> serializer) throws PerfectionException {
+		return build(domains, serializer, DEFAULT_SEED, DEFAULT_MAX_SEED_ATTEMPTS, DEFAULT_MAX_ATTEMPTS, DEFAULT_C, false);
+	}
+
+	/**
+	 * Constructs a family of minimal hashes over the supplied domains. The
+	 * domains are independent and may be hashed in parallel; the family
+	 * constructed is the same in either case.
+	 *
+	 * @param <K>
+	 *            the type of key by which domains are identified
+	 * @param <T>
+	 *            the type of values in each domain
+	 * @param domains
+	 *            the non-empty domains, keyed by identifier
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param seed
+	 *            seeds the randomness used to construct the hashes
+	 * @param maxSeedAttempts
+	 *            the maximum number of attempts that will be made to produce a
+	 *            perfect hash for each domain
+	 * @param maxAttempts
+	 *            the greatest number of attempts that the BMZ algorithm should
+	 *            make to produce a minimal hash for each domain
+	 * @param c
+	 *            a multiple, not less than 1.0, that limits the memory used to
+	 *            define the resulting hashes
+	 * @param parallel
+	 *            whether the domains should be hashed in parallel
+	 * @return a family of minimal hashes over the domains
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed for some domain
+	 */
+	public static <K, T> MinimalFamily<K, T> build(Map<K, ? extends Collection<? extends T>> domains, StreamSerializer<T> serializer, long seed, int maxSeedAttempts, int maxAttempts, double c, boolean parallel) throws PerfectionException {
+		if (domains == null) throw new IllegalArgumentException("null domains");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		if (maxSeedAttempts < 1) throw new IllegalArgumentException("maxSeedAttempts not positive");
+		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts not positive");
+		if (c < 1.0) throw new IllegalArgumentException("c less than 1.0");
+
+		// the arena layout is fixed by the domain sizes
+		int count = domains.size();
+		Object[] ids = new Object[count];
+		@SuppressWarnings("unchecked")
+		Collection<? extends T>[] values = new Collection[count];
+		int[] keyOffsets = new int[count + 1];
+		int[] gOffsets = new int[count + 1];
+		long keyTotal = 0L;
+		long gTotal = 0L;
+		int index = 0;
+		for (Map.Entry<K, ? extends Collection<? extends T>> entry : domains.entrySet()) {
+			Collection<? extends T> domain = entry.getValue();
+			if (domain == null) throw new IllegalArgumentException("null domain");
+			if (domain.isEmpty()) throw new IllegalArgumentException("empty domain");
+			ids[index] = entry.getKey();
+			values[index] = domain;
+			keyTotal += domain.size();
+			gTotal += (long) Math.ceil(c * domain.size());
+			if (gTotal > Integer.MAX_VALUE || keyTotal > Integer.MAX_VALUE) throw new IllegalArgumentException("domains too large");
+			index++;
+			keyOffsets[index] = (int) keyTotal;
+			gOffsets[index] = (int) gTotal;
+		}
+
+		// each domain populates a disjoint region of the arenas
+		MinimalFamily<K, T> family = new MinimalFamily<>(serializer, ids, keyOffsets, gOffsets);
+		IntStream range = IntStream.range(0, count);
+		if (parallel) range = range.parallel();
+		range.forEach(i -> family.populate(i, values[i], new Random(seed + i * SEED_STRIDE), maxSeedAttempts, maxAttempts, c));
+		return family;
+	}
+
+	private static int spread(Object id) {
+		int h = Objects.hashCode(id) * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	// fields
+
+	private final StreamSerializer<T> serializer;
+	// the identifier of each domain
+	private final Object[] ids;
+	// an open-addressed index of identifiers, recording one more than each domain index, zero if empty
+	private final int[] slots;
+	// the start of each domain in the key arena, with a final entry recording its length
+	private final int[] keyOffsets;
+	// the start of each domain in the g arena, with a final entry recording its length
+	private final int[] gOffsets;
+	// three seeds per domain: for the value digests and the two BMZ vertex hashes
+	private final int[] seeds;
+	private final Object[] keys;
+	private final int[] g;
+	private final ThreadLocal<SerialBuffer> buffers = ThreadLocal.withInitial(SerialBuffer::new);
+
+	// constructors
+
+	private MinimalFamily(StreamSerializer<T> serializer, Object[] ids, int[] keyOffsets, int[] gOffsets) {
+		this.serializer = serializer;
+		this.ids = ids;
+		this.keyOffsets = keyOffsets;
+		this.gOffsets = gOffsets;
+		int count = ids.length;
+		// a power of two, at most half occupied
+		slots = new int[Integer.highestOneBit(Math.max(count, 1)) << 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < count; i++) {
+			int slot = spread(ids[i]) & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = i + 1;
+		}
+		seeds = new int[count * 3];
+		keys = new Object[keyOffsets[count]];
+		g = new int[gOffsets[count]];
+	}
+
+	// accessors
+
+	/**
+	 * The identifiers of the domains in this family.
+	 *
+	 * @return an unmodifiable set of domain identifiers
+	 */
+	public Set<K> getDomains() {
+		return new AbstractSet<K>() {
+			@Override
+			public boolean contains(Object o) {
+				return indexOrNegative(o) >= 0;
+			}
+
+			@Override
+			public Iterator<K> iterator() {
+				return new Iterator<K>() {
+					private int index = 0;
+
+					@Override
+					public boolean hasNext() {
+						return index < ids.length;
+					}
+
+					@Override
+					@SuppressWarnings("unchecked")
+					public K next() {
+						if (index == ids.length) throw new NoSuchElementException();
+						return (K) ids[index++];
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ids.length;
+			}
+		};
+	}
+
+	/**
+	 * The total number of values over all the domains in this family.
+	 *
+	 * @return the size of the shared key arena
+	 */
+	public int getKeyArenaSize() {
+		return keys.length;
+	}
+
+	/**
+	 * The total number of entries in the hash tables of all the domains in
+	 * this family. Each entry occupies four bytes.
+	 *
+	 * @return the size of the shared hash table arena
+	 */
+	public int getTableArenaSize() {
+		return g.length;
+	}
+
+	// methods
+
+	/**
+	 * The number of values in the identified domain.
+	 *
+	 * @param domain
+	 *            a domain identifier
+	 * @return the size of the domain
+	 */
+	public int size(K domain) {
+		int i = index(domain);
+		return keyOffsets[i + 1] - keyOffsets[i];
+	}
+
+	/**
+	 * A minimal perfect hasher over the identified domain. The hasher is a
+	 * view of the shared arenas; a new hasher is created with each call, so
+	 * callers making repeated use of a hasher should retain it.
+	 *
+	 * @param domain
+	 *            a domain identifier
+	 * @return a minimal perfect hash over the domain
+	 */
+	public Hasher<T> hasher(K domain) {
+		return hasher(index(domain));
+	}
+
+	/**
+	 * A minimal perfect hash over the identified domain. The domain values of
+	 * the returned hash are a view of the shared key arena, ordered by hash
+	 * value. A new object is created with each call.
+	 *
+	 * @param domain
+	 *            a domain identifier
+	 * @return a minimal perfect hash over the domain
+	 */
+	public Minimal<T> minimal(K domain) {
+		int i = index(domain);
+		return new Minimal<>(hasher(i), new PerfectDomain<>(keys(i), null));
+	}
+
+	/**
+	 * The hash value of a value in the identified domain. This method verifies
+	 * the value against the shared key arena.
+	 *
+	 * @param domain
+	 *            a domain identifier
+	 * @param value
+	 *            any value
+	 * @return the hash value of the value, or -1 if the value is not a member
+	 *         of the domain
+	 */
+	public int indexOf(K domain, T value) {
+		int i = index(domain);
+		if (value == null) return -1;
+		int size = keyOffsets[i + 1] - keyOffsets[i];
+		int index = hash(i, value);
+		return index >= 0 && index < size && value.equals(keys[keyOffsets[i] + index]) ? index : -1;
+	}
+
+	/**
+	 * The value in the identified domain with the specified hash value.
+	 *
+	 * @param domain
+	 *            a domain identifier
+	 * @param index
+	 *            a hash value
+	 * @return the domain value with the hash value
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(K domain, int index) {
+		int i = index(domain);
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= keyOffsets[i + 1] - keyOffsets[i]) throw new IllegalArgumentException("index too large");
+		return (T) keys[keyOffsets[i] + index];
+	}
+
+	// private utility methods
+
+	private int index(K domain) {
+		int index = indexOrNegative(domain);
+		if (index < 0) throw new IllegalArgumentException("unknown domain");
+		return index;
+	}
+
+	private int indexOrNegative(Object domain) {
+		int mask = slots.length - 1;
+		for (int slot = spread(domain) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			int index = slots[slot] - 1;
+			if (Objects.equals(domain, ids[index])) return index;
+		}
+		return -1;
+	}
+
+	private Hasher<T> hasher(int i) {
+		return new DomainHasher(i);
+	}
+
+	// the hash value of a value in the domain, computed directly from the arenas
+	private int hash(int i, T value) {
+		long fingerprint = buffers.get().serialize(serializer, value).digest(seeds[3 * i]);
+		int offset = gOffsets[i];
+		long edge = BMZ.edge(fingerprint, seeds[3 * i + 1], seeds[3 * i + 2], gOffsets[i + 1] - offset);
+		return g[offset + BMZ.a(edge)] + g[offset + BMZ.b(edge)];
+	}
+
+	private List<T> keys(int i) {
+		int offset = keyOffsets[i];
+		int size = keyOffsets[i + 1] - offset;
+		return new AbstractList<T>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public T get(int index) {
+				if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+				return (T) keys[offset + index];
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	// hashes the values of a domain into its regions of the arenas
+	private void populate(int i, Collection<? extends T> values, Random random, int maxSeedAttempts, int maxAttempts, double c) {
+		int size = values.size();
+		long[] fingerprints = new long[size];
+		SerialBuffer buffer = new SerialBuffer();
+		for (int attempt = 0; attempt < maxSeedAttempts; attempt++) {
+			int seed = random.nextInt();
+			int count = 0;
+			for (T value : values) {
+				fingerprints[count++] = buffer.serialize(serializer, value).digest(seed);
+			}
+			if (!isDistinct(fingerprints)) continue;
+			BMZ<Integer> bmz = new BMZ<>((seed1, seed2, vertices) -> j -> BMZ.edge(fingerprints[j], seed1, seed2, vertices), maxAttempts, c, random, ConstructionContext.NONE);
+			Table table = bmz.table(BMZ.indices(size));
+			System.arraycopy(table.g, 0, g, gOffsets[i], table.g.length);
+			seeds[3 * i] = seed;
+			seeds[3 * i + 1] = table.seed1;
+			seeds[3 * i + 2] = table.seed2;
+			int offset = keyOffsets[i];
+			count = 0;
+			for (T value : values) {
+				long edge = BMZ.edge(fingerprints[count++], table.seed1, table.seed2, table.g.length);
+				keys[offset + table.g[BMZ.a(edge)] + table.g[BMZ.b(edge)]] = value;
+			}
+			return;
+		}
+		throw new PerfectionException("unable to find hash function for domain after " + maxSeedAttempts);
+	}
+
+	private static boolean isDistinct(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] == sorted[i - 1]) return false;
+		}
+		return true;
+	}
+
+	// inner classes
+
+	// a view of the hash over a single domain
+	private final class DomainHasher implements Hasher<T> {
+
+		private final int i;
+		private final HashSize size;
+
+		DomainHasher(int i) {
+			this.i = i;
+			size = HashSize.fromInt(keyOffsets[i + 1] - keyOffsets[i]);
+		}
+
+		@Override
+		public HashSize getSize() {
+			return size;
+		}
+
+		@Override
+		public HashCode hash(T value) throws IllegalArgumentException {
+			return HashCode.fromInt(intHashValue(value));
+		}
+
+		@Override
+		public int intHashValue(T value) {
+			return MinimalFamily.this.hash(i, value);
+		}
+
+		@Override
+		public long longHashValue(T value) {
+			return intHashValue(value);
+		}
+
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -31,7 +32,7 @@ public class MinimalMap<K,V> extends AbstractMap<K, V> implements Mutability<Min
 
 	// fields
 
-	private final Store<K> domain;
+	private final DomainKeys<K> domain;
 	private final Hasher<K> hasher;
 	private final Store<V> store;
 
@@ -41,12 +42,26 @@ public class MinimalMap<K,V> extends AbstractMap<K, V> implements Mutability<Min
 
 	// constructors
 
-	MinimalMap(Hasher<K> hasher, Store<K> domain, Store<V> store) {
+	MinimalMap(Hasher<K> hasher, DomainKeys<K> domain, Store<V> store) {
 		this.hasher = hasher;
 		this.domain = domain;
 		this.store = store;
 	}
 
+	// methods
+
+	/**
+	 * An estimate of the memory occupied by the store that records the values
+	 * of this map. The objects referenced from the store are not included, nor
+	 * are the hasher and keys, which are shared with the minimal hash from which
+	 * this map was created.
+	 *
+	 * @return the footprint of this map
+	 */
+	public Footprint footprint() {
+		return new Footprint(domain.size(), Collections.singletonList(new Footprint.Component("values", Footprint.storeBytes(store), 0L)));
+	}
+
 	// mutability
 
 	@Override
@@ -194,7 +209,7 @@ public class MinimalMap<K,V> extends AbstractMap<K, V> implements Mutability<Min
 	}
 
 	private int indexOf(Object o) {
-		if (!domain.isSettable(o)) return -1;
+		if (!domain.isCandidate(o)) return -1;
 		@SuppressWarnings("unchecked")
 		K k = (K) o;
 		//TODO no way to make this more efficient yet
@@ -204,12 +219,12 @@ public class MinimalMap<K,V> extends AbstractMap<K, V> implements Mutability<Min
 		} catch (IllegalArgumentException e) {
 			return -1;
 		}
-		return i >= 0 && i < domain.size() && domain.get(i).equals(k) ? i : -1;
+		return i >= 0 && i < domain.size() && domain.matches(i, k) ? i : -1;
 	}
 
 	private int checkedIndexOf(K k) {
 		int i = hasher.intHashValue(k);
-		return i >= 0 && i < domain.size() && domain.get(i).equals(k) ? i : -1;
+		return i >= 0 && i < domain.size() && domain.matches(i, k) ? i : -1;
 	}
 
 	private int indexOfValue(Object value) {
@@ -1,7 +1,9 @@
 package com.tomgibara.perfect;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -10,13 +12,12 @@ import com.tomgibara.bits.BitStore.Positions;
 import com.tomgibara.bits.Bits;
 import com.tomgibara.fundament.Mutability;
 import com.tomgibara.hashing.Hasher;
-import com.tomgibara.storage.Store;
 
 /**
  * A set implementation that pre-allocates a bit field to record membership of
  * keys from a hash domain. Sets of this nature are created via the
- * {@link Minimal#newSet()} method. The set cannot contain elements outside of
- * the hash domain.
+ * {@link Minimal#newSet()} and {@link RangeReduced#newSet()} methods. The set
+ * cannot contain elements outside of the hash domain.
  *
  * @author Tom Gibara
  *
@@ -27,19 +28,24 @@ import com.tomgibara.storage.Store;
 public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalSet<E>> {
 
 	private final Hasher<E> hasher;
-	private final Store<E> store;
+	private final DomainKeys<E> keys;
 	private final BitStore bits;
+	// the positions at which keys exist, null if there is a key at every position
+	private final BitStore occupied;
 
 	MinimalSet(Minimal<E> minimal) {
-		hasher = minimal.getHasher();
-		store = minimal.getStore();
-		bits = Bits.store(store.size());
+		this(minimal.getHasher(), minimal.getKeys(), null);
 	}
 
-	private MinimalSet(Hasher<E> hasher, Store<E> store, BitStore bits) {
+	MinimalSet(Hasher<E> hasher, DomainKeys<E> keys, BitStore occupied) {
+		this(hasher, keys, Bits.store(keys.size()), occupied);
+	}
+
+	private MinimalSet(Hasher<E> hasher, DomainKeys<E> keys, BitStore bits, BitStore occupied) {
 		this.hasher = hasher;
-		this.store = store;
+		this.keys = keys;
 		this.bits = bits;
+		this.occupied = occupied;
 	}
 
 	// methods
@@ -48,7 +54,13 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 	 * Adds all elements of the hash domain to the set.
 	 */
 	public void fill() {
-		bits.fill();
+		if (occupied == null) {
+			bits.fill();
+		} else {
+			for (Positions ps = occupied.ones().positions(); ps.hasNext(); ) {
+				bits.setBit(ps.nextPosition(), true);
+			}
+		}
 	}
 
 	/**
@@ -57,7 +69,21 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 	 * @return true if the set contains all possible elements, false otherwise
 	 */
 	public boolean isFull() {
-		return bits.ones().isAll();
+		return occupied == null ? bits.ones().isAll() : bits.ones().count() == occupied.ones().count();
+	}
+
+	/**
+	 * An estimate of the memory occupied by the bits that record the
+	 * membership of this set. The hasher and keys, which are shared with the
+	 * minimal hash from which this set was created, are not included.
+	 *
+	 * @return the footprint of this set
+	 */
+	public Footprint footprint() {
+		List<Footprint.Component> components = new ArrayList<>(2);
+		components.add(new Footprint.Component("bits", Footprint.bitsBytes(bits), 0L));
+		if (occupied != null) components.add(new Footprint.Component("occupied", Footprint.bitsBytes(occupied), 0L));
+		return new Footprint(keys.size(), components);
 	}
 
 	// mutability
@@ -79,17 +105,17 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 
 	@Override
 	public MinimalSet<E> mutableCopy() {
-		return new MinimalSet<>(hasher, store, bits.mutableCopy());
+		return new MinimalSet<>(hasher, keys, bits.mutableCopy(), occupied);
 	}
 
 	@Override
 	public MinimalSet<E> immutableCopy() {
-		return new MinimalSet<>(hasher, store, bits.immutableCopy());
+		return new MinimalSet<>(hasher, keys, bits.immutableCopy(), occupied);
 	}
 
 	@Override
 	public MinimalSet<E> immutableView() {
-		return new MinimalSet<>(hasher, store, bits.immutable());
+		return new MinimalSet<>(hasher, keys, bits.immutable(), occupied);
 	}
 
 	// set
@@ -156,7 +182,7 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 		return new Iterator<E>() {
 			private final BitStore.Positions positions = bits.ones().positions();
 			@Override public boolean hasNext() { return positions.hasNext(); }
-			@Override public E next() { return store.get(positions.next()); }
+			@Override public E next() { return keys.get(positions.next()); }
 			@Override public void remove() { positions.remove(); }
 		};
 	}
@@ -166,7 +192,7 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 		boolean modified = false;
 		for (Positions ps = bits.ones().positions(); ps.hasNext(); ) {
 			int p = ps.nextPosition();
-			E e = store.get(p);
+			E e = keys.get(p);
 			if (filter.test(e)) {
 				modified = bits.getThenSetBit(p, false) || modified;
 			}
@@ -178,14 +204,14 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 	@Override
 	public void forEach(Consumer<? super E> action) {
 		for (Positions ps = bits.ones().positions(); ps.hasNext(); ) {
-			action.accept(store.get(ps.nextPosition()));
+			action.accept(keys.get(ps.nextPosition()));
 		}
 	}
 
 	// private utility methods
 
 	private int indexOf(Object o) {
-		if (!store.isSettable(o)) return -1;
+		if (!keys.isCandidate(o)) return -1;
 		@SuppressWarnings("unchecked")
 		E e = (E) o;
 		int i;
@@ -202,11 +228,11 @@ public class MinimalSet<E> extends AbstractSet<E> implements Mutability<MinimalS
 			// order important here, nextIndex first because nextPosition advances
 			int i = ps.nextIndex();
 			int p = ps.nextPosition();
-			array[i] = store.get(p);
+			array[i] = keys.get(p);
 		}
 	}
 
 	private int validIndex(int i, E e) {
-		return i >= 0 && i < bits.size() && store.get(i).equals(e) ? i : -1;
+		return i >= 0 && i < bits.size() && keys.matches(i, e) ? i : -1;
 	}
 }
@@ -0,0 +1,790 @@
+package com.tomgibara.perfect;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+import com.tomgibara.bits.BitStore;
+import com.tomgibara.bits.Bits;
+import com.tomgibara.fundament.Mutability;
+import com.tomgibara.hashing.Hasher;
+
+/**
+ * <p>
+ * A table that pre-allocates a number of typed primitive columns, each holding
+ * one value for every key in a minimal hash domain. Tables of this nature are
+ * created via the {@link Minimal#newTable(Class...)} method.
+ *
+ * <p>
+ * Column values are held in primitive arrays (one per column) and are
+ * addressed by row and column index; the row of a key is its minimal hash
+ * value. This allows a key to be resolved to its row once, via
+ * {@link #indexOf(Object)} or {@link #rowOf(Object)}, after which any number of
+ * columns may be read or updated without rehashing or reverifying the key.
+ * This is considerably cheaper than maintaining a number of parallel
+ * {@link MinimalMap} instances over the same domain.
+ *
+ * <p>
+ * The supported column types are {@code int.class}, {@code long.class},
+ * {@code double.class} and {@code boolean.class}. All values are initially
+ * zero (or false).
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys indexing the table; that of the minimal hash
+ *            domain
+ * @see Minimal#newTable(Class...)
+ */
+public class MinimalTable<K> implements Mutability<MinimalTable<K>> {
+
+	// statics
+
+	static void checkColumnTypes(Class<?>... types) {
+		if (types == null) throw new IllegalArgumentException("null types");
+		for (Class<?> type : types) {
+			if (type == null) throw new IllegalArgumentException("null type");
+			if (type != int.class && type != long.class && type != double.class && type != boolean.class) {
+				throw new IllegalArgumentException("unsupported column type: " + type.getName());
+			}
+		}
+	}
+
+	private static Object newColumn(Class<?> type, int size) {
+		if (type == int.class) return new int[size];
+		if (type == long.class) return new long[size];
+		if (type == double.class) return new double[size];
+		return Bits.store(size);
+	}
+
+	private static Object copyColumn(Object column, boolean mutable) {
+		if (column instanceof int[]) return ((int[]) column).clone();
+		if (column instanceof long[]) return ((long[]) column).clone();
+		if (column instanceof double[]) return ((double[]) column).clone();
+		BitStore bits = (BitStore) column;
+		return mutable ? bits.mutableCopy() : bits.immutableCopy();
+	}
+
+	// fields
+
+	private final Hasher<K> hasher;
+	private final DomainKeys<K> domain;
+	private final Class<?>[] types;
+	private final Object[] columns;
+	private final boolean mutable;
+
+	// constructors
+
+	MinimalTable(Minimal<K> minimal, Class<?>... types) {
+		hasher = minimal.getHasher();
+		domain = minimal.getKeys();
+		this.types = types.clone();
+		columns = new Object[types.length];
+		int size = domain.size();
+		for (int i = 0; i < types.length; i++) {
+			columns[i] = newColumn(types[i], size);
+		}
+		mutable = true;
+	}
+
+	private MinimalTable(MinimalTable<K> that, Object[] columns, boolean mutable) {
+		this.hasher = that.hasher;
+		this.domain = that.domain;
+		this.types = that.types;
+		this.columns = columns;
+		this.mutable = mutable;
+	}
+
+	// accessors
+
+	/**
+	 * The number of rows in the table; this is always the size of the hash
+	 * domain.
+	 *
+	 * @return the number of rows
+	 */
+	public int rowCount() {
+		return domain.size();
+	}
+
+	/**
+	 * The number of columns in the table.
+	 *
+	 * @return the number of columns
+	 */
+	public int columnCount() {
+		return types.length;
+	}
+
+	/**
+	 * The type of the values stored in the specified column.
+	 *
+	 * @param column
+	 *            the index of a column
+	 * @return the primitive type of the column values
+	 */
+	public Class<?> columnType(int column) {
+		checkColumn(column);
+		return types[column];
+	}
+
+	// keys
+
+	/**
+	 * The row at which values for the specified key are recorded.
+	 *
+	 * @param key
+	 *            a possible key
+	 * @return the row of the key, or -1 if the object is not in the hash domain
+	 */
+	public int indexOf(Object key) {
+		if (!domain.isCandidate(key)) return -1;
+		@SuppressWarnings("unchecked")
+		K k = (K) key;
+		int i;
+		try {
+			i = hasher.intHashValue(k);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		return validIndex(i, k);
+	}
+
+	/**
+	 * The row at which values for the specified key are recorded. In contrast
+	 * to {@link #indexOf(Object)}, this method fails when supplied with a key
+	 * that is not in the hash domain.
+	 *
+	 * @param key
+	 *            a key from the hash domain
+	 * @return the row of the key
+	 * @throws IllegalArgumentException
+	 *             if the key is not in the hash domain
+	 */
+	public int rowOf(K key) {
+		int i = validIndex(hasher.intHashValue(key), key);
+		if (i == -1) throw new IllegalArgumentException("key not in domain");
+		return i;
+	}
+
+	/**
+	 * The key associated with a row.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @return the domain value that indexes the row
+	 */
+	public K keyAt(int row) {
+		checkRow(row);
+		return domain.get(row);
+	}
+
+	// values
+
+	/**
+	 * The value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of an {@code int} column
+	 * @return the stored value
+	 */
+	public int getInt(int row, int column) {
+		checkRow(row);
+		return ints(column)[row];
+	}
+
+	/**
+	 * Stores a value at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of an {@code int} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void setInt(int row, int column, int value) {
+		checkMutable();
+		checkRow(row);
+		ints(column)[row] = value;
+	}
+
+	/**
+	 * Adds to the value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of an {@code int} column
+	 * @param delta
+	 *            the amount to be added
+	 * @return the value after the addition
+	 */
+	public int addInt(int row, int column, int delta) {
+		checkMutable();
+		checkRow(row);
+		return ints(column)[row] += delta;
+	}
+
+	/**
+	 * The value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code long} column
+	 * @return the stored value
+	 */
+	public long getLong(int row, int column) {
+		checkRow(row);
+		return longs(column)[row];
+	}
+
+	/**
+	 * Stores a value at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code long} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void setLong(int row, int column, long value) {
+		checkMutable();
+		checkRow(row);
+		longs(column)[row] = value;
+	}
+
+	/**
+	 * Adds to the value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code long} column
+	 * @param delta
+	 *            the amount to be added
+	 * @return the value after the addition
+	 */
+	public long addLong(int row, int column, long delta) {
+		checkMutable();
+		checkRow(row);
+		return longs(column)[row] += delta;
+	}
+
+	/**
+	 * The value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @return the stored value
+	 */
+	public double getDouble(int row, int column) {
+		checkRow(row);
+		return doubles(column)[row];
+	}
+
+	/**
+	 * Stores a value at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void setDouble(int row, int column, double value) {
+		checkMutable();
+		checkRow(row);
+		doubles(column)[row] = value;
+	}
+
+	/**
+	 * Adds to the value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @param delta
+	 *            the amount to be added
+	 * @return the value after the addition
+	 */
+	public double addDouble(int row, int column, double delta) {
+		checkMutable();
+		checkRow(row);
+		return doubles(column)[row] += delta;
+	}
+
+	/**
+	 * The value stored at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code boolean} column
+	 * @return the stored value
+	 */
+	public boolean getBoolean(int row, int column) {
+		checkRow(row);
+		return booleans(column).getBit(row);
+	}
+
+	/**
+	 * Stores a value at the specified row and column.
+	 *
+	 * @param row
+	 *            the index of a row
+	 * @param column
+	 *            the index of a {@code boolean} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void setBoolean(int row, int column, boolean value) {
+		checkMutable();
+		checkRow(row);
+		booleans(column).setBit(row, value);
+	}
+
+	// column operations
+
+	/**
+	 * Resets every value in every column to zero (or false).
+	 */
+	public void clear() {
+		for (int i = 0; i < columns.length; i++) {
+			clear(i);
+		}
+	}
+
+	/**
+	 * Resets every value in the specified column to zero (or false).
+	 *
+	 * @param column
+	 *            the index of a column
+	 */
+	public void clear(int column) {
+		checkColumn(column);
+		checkMutable();
+		Object values = columns[column];
+		if (values instanceof BitStore) {
+			((BitStore) values).clear();
+			return;
+		}
+		if (values instanceof int[]) {
+			Arrays.fill((int[]) values, 0);
+		} else if (values instanceof long[]) {
+			Arrays.fill((long[]) values, 0L);
+		} else {
+			Arrays.fill((double[]) values, 0.0);
+		}
+	}
+
+	/**
+	 * Assigns the same value to every row of a column.
+	 *
+	 * @param column
+	 *            the index of an {@code int} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void fillInt(int column, int value) {
+		checkMutable();
+		Arrays.fill(ints(column), value);
+	}
+
+	/**
+	 * Assigns the same value to every row of a column.
+	 *
+	 * @param column
+	 *            the index of a {@code long} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void fillLong(int column, long value) {
+		checkMutable();
+		Arrays.fill(longs(column), value);
+	}
+
+	/**
+	 * Assigns the same value to every row of a column.
+	 *
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void fillDouble(int column, double value) {
+		checkMutable();
+		Arrays.fill(doubles(column), value);
+	}
+
+	/**
+	 * Assigns the same value to every row of a column.
+	 *
+	 * @param column
+	 *            the index of a {@code boolean} column
+	 * @param value
+	 *            the value to store
+	 */
+	public void fillBoolean(int column, boolean value) {
+		checkMutable();
+		BitStore bits = booleans(column);
+		if (value) {
+			bits.fill();
+		} else {
+			bits.clear();
+		}
+	}
+
+	/**
+	 * Replaces every value in an {@code int} column with the result of applying
+	 * the supplied operator to it.
+	 *
+	 * @param column
+	 *            the index of an {@code int} column
+	 * @param op
+	 *            the operator to apply
+	 */
+	public void applyInt(int column, IntUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		checkMutable();
+		int[] values = ints(column);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = op.applyAsInt(values[i]);
+		}
+	}
+
+	/**
+	 * Replaces every value in a {@code long} column with the result of applying
+	 * the supplied operator to it.
+	 *
+	 * @param column
+	 *            the index of a {@code long} column
+	 * @param op
+	 *            the operator to apply
+	 */
+	public void applyLong(int column, LongUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		checkMutable();
+		long[] values = longs(column);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = op.applyAsLong(values[i]);
+		}
+	}
+
+	/**
+	 * Replaces every value in a {@code double} column with the result of
+	 * applying the supplied operator to it.
+	 *
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @param op
+	 *            the operator to apply
+	 */
+	public void applyDouble(int column, DoubleUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		checkMutable();
+		double[] values = doubles(column);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = op.applyAsDouble(values[i]);
+		}
+	}
+
+	/**
+	 * Sums the values in an {@code int} or {@code long} column.
+	 *
+	 * @param column
+	 *            the index of an integral column
+	 * @return the sum of the column values
+	 */
+	public long sumLong(int column) {
+		checkColumn(column);
+		Object values = columns[column];
+		long sum = 0L;
+		if (values instanceof int[]) {
+			for (int value : (int[]) values) sum += value;
+		} else {
+			for (long value : longs(column)) sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Sums the values in a {@code double} column.
+	 *
+	 * @param column
+	 *            the index of a {@code double} column
+	 * @return the sum of the column values
+	 */
+	public double sumDouble(int column) {
+		double sum = 0.0;
+		for (double value : doubles(column)) sum += value;
+		return sum;
+	}
+
+	/**
+	 * The number of true values in a {@code boolean} column.
+	 *
+	 * @param column
+	 *            the index of a {@code boolean} column
+	 * @return the number of rows for which the column is true
+	 */
+	public int countTrue(int column) {
+		return booleans(column).ones().count();
+	}
+
+	/**
+	 * Creates a cursor that visits each row of the table in index order.
+	 *
+	 * @return a new cursor, positioned before the first row
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	// mutability
+
+	@Override
+	public boolean isMutable() {
+		return mutable;
+	}
+
+	@Override
+	public MinimalTable<K> mutable() {
+		return isMutable() ? this : mutableCopy();
+	}
+
+	@Override
+	public MinimalTable<K> immutable() {
+		return isMutable() ? immutableView() : this;
+	}
+
+	@Override
+	public MinimalTable<K> mutableCopy() {
+		return new MinimalTable<>(this, copyColumns(true), true);
+	}
+
+	@Override
+	public MinimalTable<K> immutableCopy() {
+		return new MinimalTable<>(this, copyColumns(false), false);
+	}
+
+	@Override
+	public MinimalTable<K> immutableView() {
+		Object[] views = columns.clone();
+		for (int i = 0; i < views.length; i++) {
+			Object column = views[i];
+			if (column instanceof BitStore) views[i] = ((BitStore) column).immutable();
+		}
+		return new MinimalTable<>(this, views, false);
+	}
+
+	// private utility methods
+
+	private int validIndex(int i, K k) {
+		return i >= 0 && i < domain.size() && domain.matches(i, k) ? i : -1;
+	}
+
+	private Object[] copyColumns(boolean mutable) {
+		Object[] copies = new Object[columns.length];
+		for (int i = 0; i < copies.length; i++) {
+			copies[i] = copyColumn(columns[i], mutable);
+		}
+		return copies;
+	}
+
+	private void checkMutable() {
+		if (!mutable) throw new IllegalStateException("immutable");
+	}
+
+	private void checkRow(int row) {
+		if (row < 0) throw new IllegalArgumentException("negative row");
+		if (row >= domain.size()) throw new IllegalArgumentException("row too large");
+	}
+
+	private void checkColumn(int column) {
+		if (column < 0) throw new IllegalArgumentException("negative column");
+		if (column >= columns.length) throw new IllegalArgumentException("column too large");
+	}
+
+	private Object column(int column, Class<?> type) {
+		checkColumn(column);
+		if (types[column] != type) throw new IllegalArgumentException("column " + column + " not of type " + type.getName());
+		return columns[column];
+	}
+
+	private int[] ints(int column) {
+		return (int[]) column(column, int.class);
+	}
+
+	private long[] longs(int column) {
+		return (long[]) column(column, long.class);
+	}
+
+	private double[] doubles(int column) {
+		return (double[]) column(column, double.class);
+	}
+
+	private BitStore booleans(int column) {
+		return (BitStore) column(column, boolean.class);
+	}
+
+	// inner classes
+
+	/**
+	 * Visits the rows of a table in index order. The values of the current
+	 * row can be read and modified by column index.
+	 *
+	 * @see MinimalTable#cursor()
+	 */
+	public final class Cursor {
+
+		private int row = -1;
+
+		Cursor() { }
+
+		/**
+		 * Advances the cursor to the next row.
+		 *
+		 * @return true if the cursor was advanced, false if there are no more
+		 *         rows
+		 */
+		public boolean next() {
+			if (row == domain.size()) return false;
+			return ++row < domain.size();
+		}
+
+		/**
+		 * The row at which the cursor is positioned.
+		 *
+		 * @return the current row index
+		 */
+		public int row() {
+			checkPositioned();
+			return row;
+		}
+
+		/**
+		 * The key that indexes the current row.
+		 *
+		 * @return the domain value of the current row
+		 */
+		public K key() {
+			checkPositioned();
+			return domain.get(row);
+		}
+
+		/**
+		 * The value of the current row in the specified column.
+		 *
+		 * @param column
+		 *            the index of an {@code int} column
+		 * @return the stored value
+		 * @see MinimalTable#getInt(int, int)
+		 */
+		public int getInt(int column) {
+			return MinimalTable.this.getInt(row(), column);
+		}
+
+		/**
+		 * Stores a value in the current row of the specified column.
+		 *
+		 * @param column
+		 *            the index of an {@code int} column
+		 * @param value
+		 *            the value to store
+		 * @see MinimalTable#setInt(int, int, int)
+		 */
+		public void setInt(int column, int value) {
+			MinimalTable.this.setInt(row(), column, value);
+		}
+
+		/**
+		 * The value of the current row in the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code long} column
+		 * @return the stored value
+		 * @see MinimalTable#getLong(int, int)
+		 */
+		public long getLong(int column) {
+			return MinimalTable.this.getLong(row(), column);
+		}
+
+		/**
+		 * Stores a value in the current row of the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code long} column
+		 * @param value
+		 *            the value to store
+		 * @see MinimalTable#setLong(int, int, long)
+		 */
+		public void setLong(int column, long value) {
+			MinimalTable.this.setLong(row(), column, value);
+		}
+
+		/**
+		 * The value of the current row in the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code double} column
+		 * @return the stored value
+		 * @see MinimalTable#getDouble(int, int)
+		 */
+		public double getDouble(int column) {
+			return MinimalTable.this.getDouble(row(), column);
+		}
+
+		/**
+		 * Stores a value in the current row of the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code double} column
+		 * @param value
+		 *            the value to store
+		 * @see MinimalTable#setDouble(int, int, double)
+		 */
+		public void setDouble(int column, double value) {
+			MinimalTable.this.setDouble(row(), column, value);
+		}
+
+		/**
+		 * The value of the current row in the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code boolean} column
+		 * @return the stored value
+		 * @see MinimalTable#getBoolean(int, int)
+		 */
+		public boolean getBoolean(int column) {
+			return MinimalTable.this.getBoolean(row(), column);
+		}
+
+		/**
+		 * Stores a value in the current row of the specified column.
+		 *
+		 * @param column
+		 *            the index of a {@code boolean} column
+		 * @param value
+		 *            the value to store
+		 * @see MinimalTable#setBoolean(int, int, boolean)
+		 */
+		public void setBoolean(int column, boolean value) {
+			MinimalTable.this.setBoolean(row(), column, value);
+		}
+
+		private void checkPositioned() {
+			if (row < 0 || row >= domain.size()) throw new IllegalStateException("no current row");
+		}
+	}
+
+}
@@ -0,0 +1,347 @@
+package com.tomgibara.perfect;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.tomgibara.perfect.BMZ.Table;
+
+/**
+ * <p>
+ * A minimal perfect hash over a domain of tuples of primitive fields, such as
+ * pairs of an {@code int} tenant identifier and a {@code long} item
+ * identifier. Instances are created from parallel columns of field values via
+ * the {@code over} methods.
+ *
+ * <p>
+ * Hashing a tuple through {@link Minimal} requires a key object to be
+ * allocated for each lookup and retained for each domain value. Instances of
+ * this class avoid this: the hash is computed directly from the field values,
+ * and the domain is retained as primitive columns ordered by hash value,
+ * against which lookups are verified. No objects are allocated by
+ * {@link #indexOf(long, long)} or {@link #indexOf(long, long, long)}; integer
+ * fields may be supplied to these methods directly.
+ *
+ * <p>
+ * The columns supplied to this class are copied, and instances are immutable
+ * and safe for concurrent use by multiple threads.
+ *
+ * @author Tom Gibara
+ */
+public final class MinimalTuples {
+
+	// statics
+
+	private static final long SEED = 0L;
+	private static final int MAX_SEED_ATTEMPTS = 3;
+	private static final int MAX_ATTEMPTS = 100;
+	private static final double C = 1.15;
+
+	/**
+	 * A minimal perfect hash over pairs of int and long fields.
+	 *
+	 * @param a
+	 *            the first field of each pair
+	 * @param b
+	 *            the second field of each pair
+	 * @return a minimal perfect hash over the distinct pairs
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed, typically
+	 *             because the pairs are not distinct
+	 */
+	public static MinimalTuples over(int[] a, long[] b) throws PerfectionException {
+		if (a == null) throw new IllegalArgumentException("null a");
+		if (b == null) throw new IllegalArgumentException("null b");
+		return build(new IntColumn(a), new LongColumn(b));
+	}
+
+	/**
+	 * A minimal perfect hash over pairs of int fields.
+	 *
+	 * @param a
+	 *            the first field of each pair
+	 * @param b
+	 *            the second field of each pair
+	 * @return a minimal perfect hash over the distinct pairs
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed, typically
+	 *             because the pairs are not distinct
+	 */
+	public static MinimalTuples over(int[] a, int[] b) throws PerfectionException {
+		if (a == null) throw new IllegalArgumentException("null a");
+		if (b == null) throw new IllegalArgumentException("null b");
+		return build(new IntColumn(a), new IntColumn(b));
+	}
+
+	/**
+	 * A minimal perfect hash over pairs of long fields.
+	 *
+	 * @param a
+	 *            the first field of each pair
+	 * @param b
+	 *            the second field of each pair
+	 * @return a minimal perfect hash over the distinct pairs
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed, typically
+	 *             because the pairs are not distinct
+	 */
+	public static MinimalTuples over(long[] a, long[] b) throws PerfectionException {
+		if (a == null) throw new IllegalArgumentException("null a");
+		if (b == null) throw new IllegalArgumentException("null b");
+		return build(new LongColumn(a), new LongColumn(b));
+	}
+
+	/**
+	 * A minimal perfect hash over triples of long fields.
+	 *
+	 * @param a
+	 *            the first field of each triple
+	 * @param b
+	 *            the second field of each triple
+	 * @param c
+	 *            the third field of each triple
+	 * @return a minimal perfect hash over the distinct triples
+	 * @throws PerfectionException
+	 *             if a minimal hash could not be constructed, typically
+	 *             because the triples are not distinct
+	 */
+	public static MinimalTuples over(long[] a, long[] b, long[] c) throws PerfectionException {
+		if (a == null) throw new IllegalArgumentException("null a");
+		if (b == null) throw new IllegalArgumentException("null b");
+		if (c == null) throw new IllegalArgumentException("null c");
+		return build(new LongColumn(a), new LongColumn(b), new LongColumn(c));
+	}
+
+	private static MinimalTuples build(Column... columns) {
+		int size = columns[0].size();
+		for (Column column : columns) {
+			if (column.size() != size) throw new IllegalArgumentException("mismatched column lengths");
+		}
+		Random random = new Random(SEED);
+		long[] fingerprints = new long[size];
+		for (int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+			long seed = random.nextLong();
+			for (int i = 0; i < size; i++) {
+				fingerprints[i] = fingerprint(seed, columns, i);
+			}
+			if (!isDistinct(fingerprints)) continue;
+			BMZ<Integer> bmz = new BMZ<>((seed1, seed2, vertices) -> i -> BMZ.edge(fingerprints[i], seed1, seed2, vertices), MAX_ATTEMPTS, C, random, ConstructionContext.NONE);
+			Table table = bmz.table(BMZ.indices(size));
+			int[] g = table.g;
+			int[] order = new int[size];
+			for (int i = 0; i < size; i++) {
+				long edge = BMZ.edge(fingerprints[i], table.seed1, table.seed2, g.length);
+				order[i] = g[BMZ.a(edge)] + g[BMZ.b(edge)];
+			}
+			Column[] ordered = new Column[columns.length];
+			for (int j = 0; j < columns.length; j++) {
+				ordered[j] = columns[j].reorder(order);
+			}
+			return new MinimalTuples(ordered, size, seed, table.seed1, table.seed2, g);
+		}
+		throw new PerfectionException("unable to find hash function after " + MAX_SEED_ATTEMPTS + "; tuples may not be distinct");
+	}
+
+	// fields
+
+	// the field values, ordered by hash value
+	private final Column[] columns;
+	private final int size;
+	private final long seed;
+	private final int seed1;
+	private final int seed2;
+	private final int[] g;
+
+	// constructors
+
+	private MinimalTuples(Column[] columns, int size, long seed, int seed1, int seed2, int[] g) {
+		this.columns = columns;
+		this.size = size;
+		this.seed = seed;
+		this.seed1 = seed1;
+		this.seed2 = seed2;
+		this.g = g;
+	}
+
+	// accessors
+
+	/**
+	 * The number of tuples in the domain.
+	 *
+	 * @return the size of the domain
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The number of fields in each tuple.
+	 *
+	 * @return the arity of the tuples
+	 */
+	public int arity() {
+		return columns.length;
+	}
+
+	// methods
+
+	/**
+	 * The hash value of a pair.
+	 *
+	 * @param a
+	 *            the first field of the pair
+	 * @param b
+	 *            the second field of the pair
+	 * @return the hash value of the pair, or -1 if the pair is not in the
+	 *         domain
+	 * @throws IllegalStateException
+	 *             if the domain does not consist of pairs
+	 */
+	public int indexOf(long a, long b) {
+		checkArity(2);
+		if (size == 0) return -1;
+		long h = Digests.mix(Digests.mix(seed ^ a) ^ b);
+		int index = index(h);
+		return index >= 0 && index < size && columns[0].get(index) == a && columns[1].get(index) == b ? index : -1;
+	}
+
+	/**
+	 * The hash value of a triple.
+	 *
+	 * @param a
+	 *            the first field of the triple
+	 * @param b
+	 *            the second field of the triple
+	 * @param c
+	 *            the third field of the triple
+	 * @return the hash value of the triple, or -1 if the triple is not in the
+	 *         domain
+	 * @throws IllegalStateException
+	 *             if the domain does not consist of triples
+	 */
+	public int indexOf(long a, long b, long c) {
+		checkArity(3);
+		if (size == 0) return -1;
+		long h = Digests.mix(Digests.mix(Digests.mix(seed ^ a) ^ b) ^ c);
+		int index = index(h);
+		return index >= 0 && index < size && columns[0].get(index) == a && columns[1].get(index) == b && columns[2].get(index) == c ? index : -1;
+	}
+
+	/**
+	 * A field of the tuple with the specified hash value. Integer fields are
+	 * widened to long values.
+	 *
+	 * @param field
+	 *            the index of the field within the tuple
+	 * @param index
+	 *            the hash value of the tuple
+	 * @return the value of the field
+	 */
+	public long get(int field, int index) {
+		if (field < 0) throw new IllegalArgumentException("negative field");
+		if (field >= columns.length) throw new IllegalArgumentException("field too large");
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= size) throw new IllegalArgumentException("index too large");
+		return columns[field].get(index);
+	}
+
+	// private utility methods
+
+	private void checkArity(int arity) {
+		if (columns.length != arity) throw new IllegalStateException("tuples have " + columns.length + " fields");
+	}
+
+	private int index(long fingerprint) {
+		long edge = BMZ.edge(fingerprint, seed1, seed2, g.length);
+		return g[BMZ.a(edge)] + g[BMZ.b(edge)];
+	}
+
+	// must agree with the fingerprints computed by indexOf
+	private static long fingerprint(long seed, Column[] columns, int i) {
+		long h = seed;
+		for (Column column : columns) {
+			h = Digests.mix(h ^ column.get(i));
+		}
+		return h;
+	}
+
+	private static boolean isDistinct(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] == sorted[i - 1]) return false;
+		}
+		return true;
+	}
+
+	// inner classes
+
+	private static abstract class Column {
+
+		abstract int size();
+
+		abstract long get(int index);
+
+		// a copy of the column in which each value is moved to its position in the order
+		abstract Column reorder(int[] order);
+
+	}
+
+	private static final class IntColumn extends Column {
+
+		private final int[] values;
+
+		IntColumn(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+
+		@Override
+		long get(int index) {
+			return values[index];
+		}
+
+		@Override
+		Column reorder(int[] order) {
+			int[] reordered = new int[values.length];
+			for (int i = 0; i < order.length; i++) {
+				reordered[order[i]] = values[i];
+			}
+			return new IntColumn(reordered);
+		}
+
+	}
+
+	private static final class LongColumn extends Column {
+
+		private final long[] values;
+
+		LongColumn(long[] values) {
+			this.values = values;
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+
+		@Override
+		long get(int index) {
+			return values[index];
+		}
+
+		@Override
+		Column reorder(int[] order) {
+			long[] reordered = new long[values.length];
+			for (int i = 0; i < order.length; i++) {
+				reordered[order[i]] = values[i];
+			}
+			return new LongColumn(reordered);
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.tomgibara.perfect;
+
+/**
+ * Records the parameters with which a minimal perfect hash was constructed.
+ *
+ * @author Tom Gibara
+ *
+ * @see Minimal#getParameters()
+ */
+
+public final class MinimizationParameters {
+
+	// fields
+
+	private final double c;
+	private final int attempts;
+	private final long durationNanos;
+
+	// constructors
+
+	MinimizationParameters(double c, int attempts, long durationNanos) {
+		this.c = c;
+		this.attempts = attempts;
+		this.durationNanos = durationNanos;
+	}
+
+	// accessors
+
+	/**
+	 * The multiple of the domain size that determined the number of vertices
+	 * in the graph from which the hash was constructed. The memory required to
+	 * define the hash is proportional to this value.
+	 *
+	 * @return the value of c used to construct the hash
+	 */
+
+	public double getC() {
+		return c;
+	}
+
+	/**
+	 * The total number of attempts made to construct the hash, including the
+	 * successful attempt and any attempts made with smaller values of c.
+	 *
+	 * @return the number of attempts made
+	 */
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * The time taken to construct the hash from a perfect hash.
+	 *
+	 * @return the construction time in nanoseconds
+	 */
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "c: " + c + ", attempts: " + attempts + ", duration: " + durationNanos / 1000000L + "ms";
+	}
+
+}
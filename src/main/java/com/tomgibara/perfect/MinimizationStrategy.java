@@ -0,0 +1,140 @@
+package com.tomgibara.perfect;
+
+import java.time.Duration;
+import java.util.Random;
+
+import com.tomgibara.hashing.Hasher;
+
+/**
+ * <p>
+ * Chooses the parameters with which a minimal perfect hash is constructed
+ * from the size of the domain and a stated objective. Strategies are supplied
+ * to {@link Perfect#minimized(MinimizationStrategy)}.
+ *
+ * <p>
+ * Every strategy makes a number of attempts with an initial value of the
+ * {@code c} parameter (see {@link Perfect#minimizedWithBMZ(int, double)}) and,
+ * if all of these attempts fail, raises {@code c} progressively, increasing the
+ * probability that each subsequent attempt succeeds. The number of attempts
+ * made for each value of {@code c} diminishes as the domain grows, since each
+ * attempt takes time proportional to the domain size. The parameters
+ * ultimately used are reported by {@link Minimal#getParameters()}.
+ *
+ * @author Tom Gibara
+ */
+
+public final class MinimizationStrategy {
+
+	// statics
+
+	// the number of domain values for which a maximal number of attempts is made per round
+	private static final long ATTEMPT_SCALE = 1000000L;
+	private static final int MIN_ATTEMPTS = 3;
+	private static final int MAX_ATTEMPTS = 100;
+	// attempts with smaller values of c are very unlikely to succeed over large domains
+	private static final int LARGE_DOMAIN = 10000;
+	private static final double LARGE_DOMAIN_MIN_C = 1.1;
+
+	private static final MinimizationStrategy MINIMUM_MEMORY = new MinimizationStrategy(1.0, 0.05, 1.0, 3.0, null);
+	private static final MinimizationStrategy FASTEST_BUILD = new MinimizationStrategy(2.0, 0.0, 1.5, 8.0, null);
+
+	/**
+	 * A strategy that minimizes the memory required to define the hash. Small
+	 * values of {@code c} are tried first, at the cost of a potentially greater
+	 * number of attempts.
+	 *
+	 * @return a strategy that minimizes memory use
+	 */
+
+	public static MinimizationStrategy minimumMemory() {
+		return MINIMUM_MEMORY;
+	}
+
+	/**
+	 * A strategy that minimizes construction time. Large values of {@code c}
+	 * are used so that attempts are likely to succeed first time, and the
+	 * sparser graphs that result are faster to assign, at the cost of
+	 * requiring more memory to define the hash.
+	 *
+	 * @return a strategy that minimizes construction time
+	 */
+
+	public static MinimizationStrategy fastestBuild() {
+		return FASTEST_BUILD;
+	}
+
+	/**
+	 * A strategy that limits construction time. Construction begins with the
+	 * value of {@code c} recommended by the authors of the BMZ algorithm, and
+	 * raises it as attempts fail. The time limit is checked between attempts;
+	 * if it expires before a hash has been constructed, construction fails with
+	 * a {@link PerfectionException}.
+	 *
+	 * @param limit
+	 *            the greatest time that construction should take
+	 * @return a strategy that bounds construction time
+	 */
+
+	public static MinimizationStrategy boundedTime(Duration limit) {
+		if (limit == null) throw new IllegalArgumentException("null limit");
+		if (limit.isNegative() || limit.isZero()) throw new IllegalArgumentException("non-positive limit");
+		return new MinimizationStrategy(1.15, 0.15, 1.0, 4.0, limit);
+	}
+
+	// fields
+
+	private final double initialC;
+	private final double increment;
+	private final double multiplier;
+	private final double maxC;
+	private final Duration limit;
+
+	// constructors
+
+	private MinimizationStrategy(double initialC, double increment, double multiplier, double maxC, Duration limit) {
+		this.initialC = initialC;
+		this.increment = increment;
+		this.multiplier = multiplier;
+		this.maxC = maxC;
+		this.limit = limit;
+	}
+
+	// package scoped methods
+
+	<T> Minimal<T> minimize(Hasher<T> hasher, PerfectDomain<T> domain, Random random, ConstructionContext context) throws PerfectionException {
+		int size = domain.getValues().size();
+		int attemptsPerRound = (int) Math.max(MIN_ATTEMPTS, Math.min(MAX_ATTEMPTS, ATTEMPT_SCALE / Math.max(size, 1)));
+		long start = System.nanoTime();
+		long deadline = limit == null ? 0L : start + limit.toNanos();
+		int attempts = 0;
+		double initial = size > LARGE_DOMAIN ? Math.max(initialC, LARGE_DOMAIN_MIN_C) : initialC;
+		for (double c = initial; ; c = nextC(c)) {
+			// with a time limit, attempts are made singly so that the limit can be checked between them
+			int rounds = limit == null ? 1 : attemptsPerRound;
+			int tries = limit == null ? attemptsPerRound : 1;
+			for (int round = 0; round < rounds; round++) {
+				if (limit != null && attempts > 0 && System.nanoTime() - deadline > 0L) {
+					throw new PerfectionException("failed to find minimal hash within " + limit + " after " + attempts + " attempts");
+				}
+				BMZ<T> bmz = new BMZ<>(hasher, tries, c, random, context);
+				try {
+					Hasher<T> minimal = bmz.create(domain.getValues());
+					attempts += bmz.getAttempts();
+					return new Minimal<>(minimal, domain, new MinimizationParameters(c, attempts, System.nanoTime() - start));
+				} catch (PerfectionException e) {
+					// limits that have been breached apply to every attempt
+					if (e.getProgress().isPresent()) throw e;
+					attempts += bmz.getAttempts();
+				}
+			}
+			if (c >= maxC) throw new PerfectionException("failed to find minimal hash after " + attempts + " attempts");
+		}
+	}
+
+	// private utility methods
+
+	private double nextC(double c) {
+		return Math.min(maxC, c * multiplier + increment);
+	}
+
+}
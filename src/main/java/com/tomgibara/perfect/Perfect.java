@@ -4,7 +4,16 @@ import java.util.AbstractCollection;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.OptionalLong;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.storage.Store;
@@ -67,6 +76,67 @@ public final class Perfect<T> extends DomainHash<T> {
 		return new PerfectDomain<>(new AdaptedCollection<>(values), type);
 	}
 
+	/**
+	 * Creates a domain of values over which a perfect hash can be defined from
+	 * a supplied iterable of known size. This method behaves identically to
+	 * {@link #over(Iterable)} except that, because the number of values is
+	 * supplied, the values need not be iterated merely to count them. The
+	 * size must be exact; an {@link IllegalStateException} is raised if an
+	 * iteration over the values finds a different number.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param values
+	 *            iterable access to the domain values
+	 * @param size
+	 *            the number of values in the domain
+	 * @return a domain over the supplied values
+	 */
+	public static <T> PerfectDomain<T> over(Iterable<? extends T> values, long size) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return new PerfectDomain<>(new AdaptedCollection<>(values, checkedSize(size)), null);
+	}
+
+	/**
+	 * <p>
+	 * Creates a domain of values over which a perfect hash can be defined from
+	 * a supplier of streams. Each stream supplied <i>must</i> contain the same
+	 * values in the same order, and the number of values must match the
+	 * supplied size exactly; an {@link IllegalStateException} is raised if an
+	 * iteration over the values finds a different number.
+	 *
+	 * <p>
+	 * This method is suited to domains that are read from files or database
+	 * cursors: no pass is made over the values merely to count them, and
+	 * parallel domains (see {@link PerfectDomain#parallel()}) split the values
+	 * for concurrent processing using the spliterators of the supplied streams.
+	 * Streams that are traversed sequentially are closed once they have been
+	 * exhausted, but streams that are split are not closed; for this reason,
+	 * streams that hold resources should not be used in parallel domains.
+	 *
+	 * <p>
+	 * This method is named distinctly from {@link #over(Iterable, long)} since
+	 * an {@link Iterable} may also be supplied as a lambda expression.
+	 *
+	 * <p>
+	 * Sources that are only available as spliterators can be adapted using
+	 * {@link java.util.stream.StreamSupport#stream(Spliterator, boolean)},
+	 * provided that a fresh spliterator can be obtained for each stream, since
+	 * the domain values are invariably traversed more than once.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param values
+	 *            supplies streams of the domain values
+	 * @param size
+	 *            the number of values in the domain
+	 * @return a domain over the supplied values
+	 */
+	public static <T> PerfectDomain<T> overStream(Supplier<? extends Stream<? extends T>> values, long size) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return new PerfectDomain<>(new StreamedCollection<>(values, checkedSize(size)), null);
+	}
+
 	/**
 	 * Creates a domain of values over which a perfect hash can be defined from
 	 * a supplied array. Note that, to reduce memory usage for large domains,
@@ -122,23 +192,75 @@ public final class Perfect<T> extends DomainHash<T> {
 		return new PerfectDomain<>(new AdaptedCollection<>(values), values.type().valueType());
 	}
 
+	private static int checkedSize(long size) {
+		if (size < 0L) throw new IllegalArgumentException("negative size");
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("size too large");
+		return (int) size;
+	}
+
+	// applies the action to at most the first count values, releasing any resources held by the iteration
+	static <E> void forFirst(Collection<E> values, int count, Consumer<? super E> action) {
+		if (values instanceof StreamedCollection) {
+			((StreamedCollection<E>) values).forFirst(count, action);
+			return;
+		}
+		Iterator<E> it = values.iterator();
+		for (int i = 0; i < count && it.hasNext(); i++) {
+			action.accept(it.next());
+		}
+	}
+
+	// an iterator that verifies the number of values it returns
+	private static <E> Iterator<E> sizedIterator(Iterator<E> iterator, int size, Runnable onExhaustion) {
+		return new Iterator<E>() {
+			private int count = 0;
+
+			@Override
+			public boolean hasNext() {
+				if (iterator.hasNext()) return true;
+				if (count >= 0) {
+					if (onExhaustion != null) onExhaustion.run();
+					if (count != size) throw new IllegalStateException("domain size mismatch: expected " + size + " values, found " + count);
+					count = -1;
+				}
+				return false;
+			}
+
+			@Override
+			public E next() {
+				E next = iterator.next();
+				if (++count > size) throw new IllegalStateException("domain size mismatch: more than " + size + " values");
+				return next;
+			}
+		};
+	}
+
 	private static class AdaptedCollection<E> extends AbstractCollection<E> {
 
 		private final Iterable<E> iterable;
+		private final boolean sized;
 		private int size;
 
 		AdaptedCollection(Iterable<E> iterable) {
 			this.iterable = iterable;
+			sized = false;
 			size = -1;
 		}
 
+		AdaptedCollection(Iterable<E> iterable, int size) {
+			this.iterable = iterable;
+			sized = true;
+			this.size = size;
+		}
+
 		AdaptedCollection(Store<E> store) {
 			iterable = store;
+			sized = false;
 			size = store.count();
 		}
 
 		public Iterator<E> iterator() {
-			return iterable.iterator();
+			return sized ? sizedIterator(iterable.iterator(), size, null) : iterable.iterator();
 		}
 
 		public int size() {
@@ -152,11 +274,65 @@ public final class Perfect<T> extends DomainHash<T> {
 
 	}
 
+	private static final class StreamedCollection<E> extends AbstractCollection<E> {
+
+		private final Supplier<? extends Stream<? extends E>> supplier;
+		private final int size;
+
+		StreamedCollection(Supplier<? extends Stream<? extends E>> supplier, int size) {
+			this.supplier = supplier;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			Stream<? extends E> stream = newStream();
+			return sizedIterator(Spliterators.iterator(stream.spliterator()), size, stream::close);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Spliterator<E> spliterator() {
+			return (Spliterator<E>) newStream().spliterator();
+		}
+
+		void forFirst(int count, Consumer<? super E> action) {
+			try (Stream<? extends E> stream = newStream()) {
+				stream.limit(count).forEachOrdered(action);
+			}
+		}
+
+		private Stream<? extends E> newStream() {
+			Stream<? extends E> stream = supplier.get();
+			if (stream == null) throw new IllegalStateException("null stream");
+			return stream;
+		}
+
+	}
+
 	private final Random random;
+	private final ConstructionContext context;
+	// the seed of a hash found by seed search, empty if unseeded or not searched for
+	private final OptionalLong seed;
 
 	Perfect(Hasher<T> hasher, PerfectDomain<T> domain, Random random) {
+		this(hasher, domain, random, ConstructionContext.NONE);
+	}
+
+	Perfect(Hasher<T> hasher, PerfectDomain<T> domain, Random random, ConstructionContext context) {
+		this(hasher, domain, random, context, OptionalLong.empty());
+	}
+
+	Perfect(Hasher<T> hasher, PerfectDomain<T> domain, Random random, ConstructionContext context, OptionalLong seed) {
 		super(hasher, domain);
 		this.random = random;
+		this.context = context;
+		this.seed = seed;
 	}
 
 	/**
@@ -173,6 +349,103 @@ public final class Perfect<T> extends DomainHash<T> {
 		return createMinimized(100, 1.15);
 	}
 
+	/**
+	 * <p>
+	 * Attempts to derive a perfect hash into a range of
+	 * <code>&lceil;n&middot;loadFactor&rceil;</code> values from this perfect
+	 * hash, where {@code n} is the size of the domain. The hash is found by
+	 * hashing domain values into small buckets and displacing each bucket,
+	 * largest first, until all of its values occupy distinct positions; this
+	 * is typically much faster than minimization. The attempt may fail with a
+	 * perfection exception if no suitable hash is found within a predefined
+	 * number of attempts.
+	 *
+	 * <p>
+	 * Load factors closer to 1.2 produce denser hashes at the cost of longer
+	 * construction. Denser ranges are not supported: over large domains, the
+	 * last buckets to be displaced would rarely find unoccupied positions.
+	 *
+	 * @param loadFactor
+	 *            the ratio, not less than 1.2, of the range to the domain size
+	 * @return a perfect hash into the reduced range over the same domain
+	 * @throws PerfectionException
+	 *             if a suitable hash could not be found
+	 * @see RangeReduced
+	 */
+	public RangeReduced<T> rangeReduced(double loadFactor) throws PerfectionException {
+		if (loadFactor < 1.2) throw new IllegalArgumentException("loadFactor less than 1.2");
+		long range = (long) Math.ceil(domain.getValues().size() * loadFactor);
+		if (range > Integer.MAX_VALUE) throw new IllegalArgumentException("range too large");
+		HashAndDisplace<T> displace = new HashAndDisplace<>(hasher, (int) Math.max(range, 1L), 10, random, context);
+		return new RangeReduced<>(displace.create(domain.getValues()), domain);
+	}
+
+	/**
+	 * Attempts to derive a minimal perfect hash from this perfect hash
+	 * asynchronously, using default settings. The returned future completes
+	 * with the hash that {@link #minimized()} would return, or exceptionally
+	 * with the exception it would raise. Cancelling the returned future
+	 * cancels minimization at the next point at which limits are checked (see
+	 * {@link ConstructionLimits}).
+	 *
+	 * @param executor
+	 *            the executor with which to minimize the hash
+	 * @return a future minimal perfect hash over the same domain
+	 * @see #minimized()
+	 */
+	public CompletableFuture<Minimal<T>> minimizedAsync(Executor executor) {
+		return context.async(executor, c -> withContext(c).minimized());
+	}
+
+	/**
+	 * Attempts to derive a minimal perfect hash from this perfect hash
+	 * asynchronously, using parameters chosen by the supplied strategy.
+	 *
+	 * @param strategy
+	 *            determines the parameters used to derive the hash
+	 * @param executor
+	 *            the executor with which to minimize the hash
+	 * @return a future minimal perfect hash over the same domain
+	 * @see #minimized(MinimizationStrategy)
+	 * @see #minimizedAsync(Executor)
+	 */
+	public CompletableFuture<Minimal<T>> minimizedAsync(MinimizationStrategy strategy, Executor executor) {
+		if (strategy == null) throw new IllegalArgumentException("null strategy");
+		return context.async(executor, c -> withContext(c).minimized(strategy));
+	}
+
+	/**
+	 * A perfect hash identical to this one, but which will be minimized within
+	 * the supplied limits. The limits replace any with which this hash was
+	 * created.
+	 *
+	 * @param limits
+	 *            the limits within which minimization will be performed
+	 * @return a perfect hash that is minimized within the supplied limits
+	 * @see ConstructionLimits
+	 */
+	public Perfect<T> limitedBy(ConstructionLimits limits) {
+		if (limits == null) throw new IllegalArgumentException("null limits");
+		return withContext(context.withLimits(limits));
+	}
+
+	/**
+	 * Attempts to derive a minimal perfect hash from this perfect hash using
+	 * parameters chosen by the supplied strategy. The parameters used are
+	 * available from {@link Minimal#getParameters()}.
+	 *
+	 * @param strategy
+	 *            determines the parameters used to derive the hash
+	 * @return a minimal perfect hash over the same domain
+	 * @throws PerfectionException
+	 *             if the strategy failed to create a suitable hash
+	 * @see MinimizationStrategy
+	 */
+	public Minimal<T> minimized(MinimizationStrategy strategy) throws PerfectionException {
+		if (strategy == null) throw new IllegalArgumentException("null strategy");
+		return strategy.minimize(hasher, domain, random, context);
+	}
+
 	/**
 	 * <p>
 	 * Attempts to derive a minimal perfect hash from this perfect hash using
@@ -204,11 +477,133 @@ public final class Perfect<T> extends DomainHash<T> {
 	public Minimal<T> minimizedWithBMZ(int maxAttempts, double c) throws PerfectionException {
 		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts not positive");
 		if (c < 1.0) throw new IllegalArgumentException("c less than 1.0");
-		return createMinimized(maxAttempts, c);
+		return createMinimized(maxAttempts, c, context);
+	}
+
+	/**
+	 * Attempts to derive a minimal perfect hash from this perfect hash using
+	 * the BMZ algorithm, reporting the progress of each attempt to the
+	 * supplied observer. The observer replaces any observer with which this
+	 * perfect hash was created, but any limits under which it was created
+	 * continue to apply.
+	 *
+	 * @param maxAttempts
+	 *            the greatest number of attempts that the algorithm should make
+	 *            to produce a minimal hash
+	 * @param c
+	 *            a multiple, not less than 1.0, that limits the memory used to
+	 *            define the resulting hash
+	 * @param observer
+	 *            receives events describing the construction of the hash
+	 * @return a minimal perfect hash over the same domain
+	 * @throws PerfectionException
+	 *             if the minimization algorithm failed to create a suitable
+	 *             hash within the specified number of attempts
+	 * @see #minimizedWithBMZ(int, double)
+	 */
+	public Minimal<T> minimizedWithBMZ(int maxAttempts, double c, ConstructionObserver observer) throws PerfectionException {
+		if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts not positive");
+		if (c < 1.0) throw new IllegalArgumentException("c less than 1.0");
+		return createMinimized(maxAttempts, c, context.withObserver(observer));
+	}
+
+	/**
+	 * <p>
+	 * Attempts to derive a minimal perfect hash from this perfect hash using
+	 * the BDZ algorithm. Each domain value is mapped to an edge of a
+	 * randomized 3-uniform hypergraph over approximately {@code 1.125*m}
+	 * vertices, where {@code m} is the number of elements in the domain. If
+	 * the hypergraph can be peeled, a 2-bit value is assigned to each vertex
+	 * and the hash is the rank of the vertex selected by the values of each
+	 * edge. Construction takes time linear in the size of the domain.
+	 *
+	 * <p>
+	 * The hash requires approximately 2.4 bits per element, compared with the
+	 * {@code 32*c} bits per element required by hashes produced by
+	 * {@link #minimizedWithBMZ(int, double)}, though evaluating the hash is
+	 * somewhat more costly. These figures are asymptotic, holding from about a
+	 * million elements: smaller domains need proportionally more vertices to
+	 * be reliably peeled, approximately {@code 1.25*m} for ten thousand
+	 * elements and {@code 1.375*m} for a thousand, before the vertices are
+	 * rounded up to whole segments of the hypergraph.
+	 *
+	 * @return a minimal perfect hash over the same domain
+	 * @throws PerfectionException
+	 *             if the minimization algorithm failed to create a suitable
+	 *             hash within a predefined number of attempts
+	 */
+	public Minimal<T> minimizedWithBDZ() throws PerfectionException {
+		long start = System.nanoTime();
+		BDZ<T> bdz = new BDZ<>(hasher, 100, random, context);
+		Hasher<T> h = bdz.create(domain.getValues());
+		int size = domain.getValues().size();
+		double c = Fuse.forSize(size).arrayLength / (double) Math.max(size, 1);
+		return new Minimal<>(h, domain, new MinimizationParameters(c, bdz.getAttempts(), System.nanoTime() - start));
+	}
+
+	/**
+	 * <p>
+	 * Attempts to derive a minimal perfect hash from this perfect hash that
+	 * assigns the lowest hash values to the most frequently accessed domain
+	 * values. The {@code hotCount} values with the greatest access counts
+	 * are hashed into the range {@code [0, hotCount)} and the remaining values
+	 * into the range above it.
+	 *
+	 * <p>
+	 * A minimal hash otherwise distributes frequently accessed values across
+	 * the whole range of the hash, so that lookups of these values into
+	 * stores indexed by the hash, such as those backing a {@link MinimalMap},
+	 * touch many cache lines. With this hash, the frequently accessed values
+	 * of every such store occupy a contiguous prefix. The hot values are hashed
+	 * by a separate small minimal hash which is consulted first, and which is
+	 * itself likely to remain in cache. The perfect hash of a value is
+	 * computed once per lookup, so a hot value costs about as much to hash as
+	 * with {@link #minimizedWithBMZ(int, double)}; a cold value additionally
+	 * requires the vertices of its edge in the larger hash to be computed and
+	 * read, roughly doubling the cost of the lookup after the perfect hash.
+	 *
+	 * <p>
+	 * Construction fails if a cold value cannot be distinguished from a hot
+	 * value by its perfect hash, which is only possible for perfect hashes of
+	 * more than 64 bits.
+	 *
+	 * @param accesses
+	 *            the number of times each domain value is accessed, or any
+	 *            measure proportional to it
+	 * @param hotCount
+	 *            the number of values to which the lowest hash values should
+	 *            be assigned
+	 * @return a minimal perfect hash over the same domain
+	 * @throws PerfectionException
+	 *             if the minimization algorithm failed to create a suitable
+	 *             hash within a predefined number of attempts
+	 */
+	public Minimal<T> minimizedWithProfile(ToLongFunction<? super T> accesses, int hotCount) throws PerfectionException {
+		if (accesses == null) throw new IllegalArgumentException("null accesses");
+		if (hotCount < 0) throw new IllegalArgumentException("negative hotCount");
+		if (hotCount > domain.getValues().size()) throw new IllegalArgumentException("hotCount exceeds domain size");
+		long start = System.nanoTime();
+		double c = 1.15;
+		HotColdHasher<T> h = HotColdHasher.create(hasher, domain.getValues(), accesses, hotCount, 100, c, random, context);
+		return new Minimal<>(h, domain, new MinimizationParameters(c, h.getAttempts(), System.nanoTime() - start));
+	}
+
+	private Perfect<T> withContext(ConstructionContext context) {
+		return new Perfect<>(hasher, domain, random, context, seed);
+	}
+
+	OptionalLong getSeed() {
+		return seed;
 	}
 
 	private Minimal<T> createMinimized(int maxAttempts, double c) throws PerfectionException {
-		Hasher<T> h = new BMZ<>(hasher, maxAttempts, c, random).create(domain.getValues());
-		return new Minimal<>(h, domain);
+		return createMinimized(maxAttempts, c, context);
+	}
+
+	private Minimal<T> createMinimized(int maxAttempts, double c, ConstructionContext context) throws PerfectionException {
+		long start = System.nanoTime();
+		BMZ<T> bmz = new BMZ<>(hasher, maxAttempts, c, random, context);
+		Hasher<T> h = bmz.create(domain.getValues());
+		return new Minimal<>(h, domain, new MinimizationParameters(c, bmz.getAttempts(), System.nanoTime() - start));
 	}
 }
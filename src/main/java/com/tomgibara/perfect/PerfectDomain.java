@@ -1,16 +1,32 @@
 package com.tomgibara.perfect;
 
 import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.tomgibara.bits.BitStore;
 import com.tomgibara.bits.Bits;
 import com.tomgibara.collect.Equivalence;
 import com.tomgibara.hashing.HashSize;
 import com.tomgibara.hashing.Hasher;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
 import com.tomgibara.streams.StreamBytes;
 import com.tomgibara.streams.StreamSerializer;
 import com.tomgibara.streams.Streams;
@@ -30,17 +46,38 @@ public class PerfectDomain<T> {
 
 	private static final int MAX_SEED_ATTEMPTS = 3;
 	static final int COMPACT_BIT_CUTOFF = 16;
+	static final int LONG_BIT_CUTOFF = 64;
+	private static final int MAX_DIGEST_COLLISIONS = 1024;
+	// the number of bits set in the parallel perfection filter for each hash value
+	private static final int FILTER_PROBES = 4;
 
 	// fields
 
 	private final Collection<? extends T> values;
 	private final Class<T> type;
+	private final boolean parallel;
+	// zero if checks are made in memory
+	private final long memoryBudget;
+	// null if the default temporary directory is used
+	private final Path directory;
+	// the context that limits checks, and the phase they serve
+	private final ConstructionContext context;
+	private final Phase phase;
 
 	// constructors
 
 	PerfectDomain(Collection<? extends T> values, Class<T> type) {
+		this(values, type, false, 0L, null, ConstructionContext.NONE, null);
+	}
+
+	private PerfectDomain(Collection<? extends T> values, Class<T> type, boolean parallel, long memoryBudget, Path directory, ConstructionContext context, Phase phase) {
 		this.values = values;
 		this.type = type;
+		this.parallel = parallel;
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+		this.context = context;
+		this.phase = phase;
 	}
 
 	// accessors
@@ -64,6 +101,27 @@ public class PerfectDomain<T> {
 		return Optional.ofNullable(type);
 	}
 
+	/**
+	 * Whether this domain tests for perfection and injectivity in parallel.
+	 *
+	 * @return true if tests are made in parallel, false otherwise
+	 * @see #parallel()
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Whether this domain tests for perfection and injectivity by spilling
+	 * sorted runs of hash values to disk.
+	 *
+	 * @return true if tests are made using external storage, false otherwise
+	 * @see #external(long)
+	 */
+	public boolean isExternal() {
+		return memoryBudget > 0L;
+	}
+
 	// methods
 
 	/**
@@ -73,19 +131,38 @@ public class PerfectDomain<T> {
 	 * value.
 	 *
 	 * <p>
-	 * For large domains, this method requires memory proportional to the log of
-	 * the domain size.
+	 * For hashes of up to 64 bits, this method requires at most eight bytes of
+	 * memory per domain value, and no memory is allocated per value. For very
+	 * large domains, the values are checked in a number of partitions, with a
+	 * separate pass over the domain being made for each, so that memory usage
+	 * remains bounded. For larger hashes, this method requires memory
+	 * proportional to the log of the domain size.
+	 *
+	 * <p>
+	 * If this domain is parallel, the values are partitioned between multiple
+	 * threads and the test stops as soon as any thread discovers a collision.
+	 * If this domain is external, hash values are instead sorted in runs that
+	 * fit within the memory budget, spilled to temporary files and then merged,
+	 * so that a single pass over the domain suffices however large it is.
+	 * Hashes wider than 64 bits are compared by 64-bit digests in the same way,
+	 * with a second pass comparing exactly the few values whose digests collide.
 	 *
 	 * @param hasher
 	 *            the hasher to be tested for perfection
 	 * @return true if the hasher is perfect over this domain, false otherwise
+	 * @see #parallel()
 	 */
 
 	public boolean isPerfect(Hasher<T> hasher) {
 		if (hasher == null) throw new IllegalArgumentException("null hasher");
 		HashSize size = hasher.getSize();
+		int bits = size.getBits();
 		// we can do compact test using a bitmap if the hash size is small enough
-		if (size.getBits() <= COMPACT_BIT_CUTOFF) {
+		if (bits <= COMPACT_BIT_CUTOFF) {
+			if (parallel) {
+				ConcurrentBitmap bitmap = new ConcurrentBitmap(size.asInt());
+				return parallelStream().noneMatch(v -> bitmap.getThenSet(hasher.intHashValue(v)));
+			}
 			BitStore store = Bits.store(size.asInt());
 			for (T value : values) {
 				if (store.getThenSetBit(hasher.intHashValue(value), true)) {
@@ -94,9 +171,16 @@ public class PerfectDomain<T> {
 			}
 			return true;
 		}
+		// hash values that fit into a long can be checked without allocation
+		if (bits <= LONG_BIT_CUTOFF) {
+			return duplicateFinder().isUnique(hasher::longHashValue, bits);
+		}
+		// external checks remain within the memory budget however wide the hash
+		if (isExternal()) return isPerfectExternally(hasher);
 		// fall back to a uniqueness check - still highly memory efficient
+		if (parallel) return isPerfectInParallel(hasher);
 		Iterable<BigInteger> iterable = () -> new HashIterator<>(values.iterator(), hasher);
-		int sizeEstimate = (11 + (size.getBits() + 31 >> 5)) << 2;
+		int sizeEstimate = (11 + (bits + 31 >> 5)) << 2;
 		int itemCount = values.size();
 		UniquenessChecker<BigInteger> checker = new UniquenessChecker<>(itemCount, sizeEstimate, Equivalence.equality(), BigInteger.class);
 		return checker.check(iterable);
@@ -111,8 +195,11 @@ public class PerfectDomain<T> {
 	 * domain elements become indistinguishable.
 	 *
 	 * <p>
-	 * For large domains, this method requires memory proportional to the log of
-	 * the domain size.
+	 * Each value is serialized into a reused buffer from which a 64-bit digest
+	 * is computed; only the digests are retained, requiring eight bytes of
+	 * memory per domain value (see {@link #isPerfect(Hasher)}). Values are
+	 * serialized a second time, and their bytes compared in full, only in the
+	 * unlikely event that their digests collide.
 	 *
 	 * @param serializer
 	 *            the serializer to be evaulated
@@ -122,11 +209,102 @@ public class PerfectDomain<T> {
 
 	public boolean isInjective(StreamSerializer<T> serializer) {
 		if (serializer == null) throw new IllegalArgumentException("null serializer");
-		Iterable<byte[]> iterable = () -> new BytesIterator<>(values.iterator(), serializer);
-		int sizeEstimate = 50;
-		int itemCount = values.size();
-		UniquenessChecker<byte[]> checker = new UniquenessChecker<>(itemCount, sizeEstimate, Equivalence.bytes(), byte[].class);
-		return checker.check(iterable);
+		for (int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+			long seed = attempt;
+			// first pass: identify any values with colliding digests
+			ToLongFunction<T> digester;
+			if (parallel) {
+				ThreadLocal<SerialBuffer> buffers = ThreadLocal.withInitial(SerialBuffer::new);
+				digester = v -> buffers.get().serialize(serializer, v).digest(seed);
+			} else {
+				SerialBuffer buffer = new SerialBuffer();
+				digester = v -> buffer.serialize(serializer, v).digest(seed);
+			}
+			long[] collisions = duplicateFinder().duplicates(digester, 64, MAX_DIGEST_COLLISIONS);
+			if (collisions.length == 0) return true;
+			boolean saturated = collisions.length == MAX_DIGEST_COLLISIONS;
+			// too many collisions to compare bytes, assume a weak serializer and check exhaustively
+			if (saturated && !isExternal()) return isInjectiveExhaustively(serializer);
+			// second pass: compare the bytes of values with colliding digests
+			SerialBuffer buffer = new SerialBuffer();
+			Map<Long, List<byte[]>> candidates = new HashMap<>();
+			long count = 0L;
+			for (T value : values) {
+				if (count % ConstructionContext.CHECK_INTERVAL == 0) context.check(phase, 0, count);
+				count++;
+				long digest = buffer.serialize(serializer, value).digest(seed);
+				if (Arrays.binarySearch(collisions, digest) < 0) continue;
+				byte[] bytes = buffer.toByteArray();
+				List<byte[]> list = candidates.computeIfAbsent(digest, d -> new ArrayList<>(2));
+				for (byte[] other : list) {
+					if (Arrays.equals(bytes, other)) return false;
+				}
+				list.add(bytes);
+			}
+			if (!saturated) return true;
+			// a full set of collisions may omit some, so external domains retry with another digest
+		}
+		// implausibly many digest collisions between distinct values
+		return false;
+	}
+
+	/**
+	 * A domain over the same values as this domain, but which tests for
+	 * perfection and injectivity in parallel. Parallel testing can
+	 * substantially reduce the time taken to confirm the perfection of a hash
+	 * over a large domain, provided that the domain values can be efficiently
+	 * split for concurrent processing (see {@link Collection#spliterator()}).
+	 * An external domain that is made parallel no longer tests using external
+	 * storage.
+	 *
+	 * @return a parallel domain over the same values
+	 */
+	public PerfectDomain<T> parallel() {
+		return parallel ? this : new PerfectDomain<>(values, type, true, 0L, null, context, phase);
+	}
+
+	/**
+	 * A domain over the same values as this domain, but which tests for
+	 * perfection and injectivity using an external sort. This allows domains
+	 * that are too large for their hash values to be held in memory to be
+	 * tested in a single pass. The supplied budget bounds the memory used to
+	 * sort hash values; it does not account for the memory used by the domain
+	 * values themselves. Temporary files are created in the default temporary
+	 * directory and deleted once each test completes.
+	 *
+	 * <p>
+	 * External testing is always sequential: a parallel domain that is made
+	 * external will no longer test in parallel.
+	 *
+	 * @param memoryBudget
+	 *            the maximum number of bytes used to sort hash values in memory,
+	 *            at least 64KB
+	 * @return an external domain over the same values
+	 * @see #external(long, Path)
+	 */
+
+	public PerfectDomain<T> external(long memoryBudget) {
+		return external(memoryBudget, null);
+	}
+
+	/**
+	 * A domain over the same values as this domain, but which tests for
+	 * perfection and injectivity using an external sort with temporary files
+	 * created in the specified directory.
+	 *
+	 * @param memoryBudget
+	 *            the maximum number of bytes used to sort hash values in memory,
+	 *            at least 64KB
+	 * @param directory
+	 *            the directory in which temporary files are created, or null to
+	 *            use the default temporary directory
+	 * @return an external domain over the same values
+	 * @see #external(long)
+	 */
+
+	public PerfectDomain<T> external(long memoryBudget, Path directory) {
+		if (memoryBudget < ExternalUniquenessChecker.MIN_MEMORY_BUDGET) throw new IllegalArgumentException("memoryBudget too small");
+		return new PerfectDomain<>(values, type, false, memoryBudget, directory, context, phase);
 	}
 
 	/**
@@ -162,8 +340,163 @@ public class PerfectDomain<T> {
 		return new Perfectionist<>(this, maxSeedAttempts, random);
 	}
 
+	/**
+	 * An object that can attempt to generate perfect hashes over this domain,
+	 * reporting its progress to the supplied observer. The observer is also
+	 * notified during the minimization of any perfect hashes that the object
+	 * generates.
+	 *
+	 * @param maxSeedAttempts
+	 *            the maximum number of attempts that will be made to produce a
+	 *            perfect hash
+	 * @param random
+	 *            a source of randomness for generating perfect hashes
+	 * @param observer
+	 *            receives events describing the construction of hashes
+	 * @return an object for generating perfect hashes over this domain
+	 * @see #using(int, Random)
+	 */
+
+	public Perfectionist<T> using(int maxSeedAttempts, Random random, ConstructionObserver observer) {
+		return new Perfectionist<>(this, maxSeedAttempts, random, ConstructionContext.of(observer));
+	}
+
+	// a domain that records each pass made over its values
+	PerfectDomain<T> counted(LongAdder passes) {
+		return new PerfectDomain<>(new CountedCollection<>(values, passes), type, parallel, memoryBudget, directory, context, phase);
+	}
+
+	// a domain that checks hashes within the limits of the context
+	PerfectDomain<T> withContext(ConstructionContext context, Phase phase) {
+		if (context == this.context && phase == this.phase) return this;
+		return new PerfectDomain<>(values, type, parallel, memoryBudget, directory, context, phase);
+	}
+
+	// private utility methods
+
+	// only values with colliding digests are compared exactly, so memory is bounded by the collisions
+	private boolean isPerfectExternally(Hasher<T> hasher) {
+		for (int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+			long seed = attempt;
+			long[] collisions = duplicateFinder().duplicates(v -> digest(hasher.bigHashValue(v), seed), 64, MAX_DIGEST_COLLISIONS);
+			if (collisions.length == 0) return true;
+			Set<BigInteger> candidates = new HashSet<>();
+			long count = 0L;
+			for (T value : values) {
+				if (count % ConstructionContext.CHECK_INTERVAL == 0) context.check(phase, 0, count);
+				count++;
+				BigInteger big = hasher.bigHashValue(value);
+				if (Arrays.binarySearch(collisions, digest(big, seed)) >= 0 && !candidates.add(big)) return false;
+			}
+			if (collisions.length < MAX_DIGEST_COLLISIONS) return true;
+			// a full set of collisions may omit some, so retry with another digest
+		}
+		// implausibly many digest collisions between distinct hash values
+		return false;
+	}
+
+	private static long digest(BigInteger big, long seed) {
+		byte[] bytes = big.toByteArray();
+		return Digests.digest(bytes, 0, bytes.length, seed);
+	}
+
+	private boolean isInjectiveExhaustively(StreamSerializer<T> serializer) {
+		Iterable<byte[]> iterable = () -> new BytesIterator<>(values.iterator(), serializer);
+		int sizeEstimate = 50;
+		int itemCount = values.size();
+		UniquenessChecker<byte[]> checker = new UniquenessChecker<>(itemCount, sizeEstimate, Equivalence.bytes(), byte[].class);
+		return checker.check(iterable);
+	}
+
+	private DuplicateFinder<T> duplicateFinder() {
+		return isExternal() ?
+				new ExternalUniquenessChecker<>(values, memoryBudget, directory, context, phase) :
+				new LongUniquenessChecker<>(values, parallel, context, phase);
+	}
+
+	private Stream<? extends T> parallelStream() {
+		return StreamSupport.stream(values.spliterator(), true);
+	}
+
+	// a concurrent counterpart of the uniqueness checker
+	private boolean isPerfectInParallel(Hasher<T> hasher) {
+		int bitsLog = ConcurrentBitmap.filterBitsLog(values.size());
+		Set<BigInteger> candidates = ConcurrentHashMap.newKeySet();
+		{ // first pass: values that collide in the filter are recorded as candidates
+			ConcurrentBitmap filter = new ConcurrentBitmap(1L << bitsLog);
+			int wordMask = filter.wordCount() - 1;
+			boolean dupe = parallelStream().map(hasher::bigHashValue).anyMatch(big -> {
+				long h = spread(fold(big));
+				return filter.getThenSetAll((int) (h >>> 32) & wordMask, probes(h)) && !candidates.add(big);
+			});
+			if (dupe) return false;
+		}
+		{ // second pass: candidates that are witnessed twice are dupes
+			Set<BigInteger> witnesses = ConcurrentHashMap.newKeySet();
+			boolean dupe = parallelStream().map(hasher::bigHashValue).anyMatch(big ->
+				candidates.contains(big) && !witnesses.add(big)
+			);
+			return !dupe;
+		}
+	}
+
+	// folds every bit of the hash into a long
+	private static long fold(BigInteger big) {
+		long h = big.longValue();
+		while (big.bitLength() > 64) {
+			big = big.shiftRight(64);
+			h = spread(h) ^ big.longValue();
+		}
+		return h;
+	}
+
+	private static long spread(long h) {
+		long x = h * 0x9e3779b97f4a7c15L;
+		return x ^ (x >>> 29);
+	}
+
+	// the filter is blocked: all probes of a value fall in a single word so
+	// that they are tested and set atomically, and concurrent insertions of
+	// equal values cannot both observe an absent value
+	private static long probes(long h) {
+		long mask = 0L;
+		for (int i = 0; i < FILTER_PROBES; i++) {
+			mask |= 1L << (h >>> (6 * i));
+		}
+		return mask;
+	}
+
 	// inner classes
 
+	private static final class CountedCollection<E> extends AbstractCollection<E> {
+
+		private final Collection<E> values;
+		private final LongAdder passes;
+
+		CountedCollection(Collection<E> values, LongAdder passes) {
+			this.values = values;
+			this.passes = passes;
+		}
+
+		@Override
+		public int size() {
+			return values.size();
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			passes.increment();
+			return values.iterator();
+		}
+
+		@Override
+		public Spliterator<E> spliterator() {
+			passes.increment();
+			return values.spliterator();
+		}
+
+	}
+
 	private static class HashIterator<E> implements Iterator<BigInteger> {
 
 		private final Iterator<? extends E> iterator;
@@ -182,9 +515,7 @@ public class PerfectDomain<T> {
 		@Override
 		public BigInteger next() {
 			E value = iterator.next();
-			BigInteger big = hasher.bigHashValue(value);
-			if (big.intValue() == 3155236) System.out.println(value);
-			return big;
+			return hasher.bigHashValue(value);
 		}
 
 	}
@@ -1,5 +1,7 @@
 package com.tomgibara.perfect;
 
+import java.util.Optional;
+
 /**
  * This exception is raised when an element of the API has failed to generate a suitable perfect hash.
  *
@@ -9,22 +11,46 @@ public class PerfectionException extends RuntimeException {
 
 	private static final long serialVersionUID = 2978793906449343420L;
 
-	PerfectionException() { }
+	private final ConstructionProgress progress;
+
+	PerfectionException() {
+		progress = null;
+	}
 
 	PerfectionException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
 		super(message, cause, enableSuppression, writableStackTrace);
+		progress = null;
 	}
 
 	PerfectionException(String message, Throwable cause) {
 		super(message, cause);
+		progress = null;
 	}
 
 	PerfectionException(String message) {
 		super(message);
+		progress = null;
 	}
 
 	PerfectionException(Throwable cause) {
 		super(cause);
+		progress = null;
+	}
+
+	PerfectionException(ConstructionProgress progress) {
+		super("construction stopped: " + progress);
+		this.progress = progress;
+	}
+
+	/**
+	 * The progress made by construction, if it was stopped because a
+	 * {@link ConstructionLimits limit} was breached.
+	 *
+	 * @return the progress of construction, or empty
+	 */
+
+	public Optional<ConstructionProgress> getProgress() {
+		return Optional.ofNullable(progress);
 	}
 
 }
@@ -1,12 +1,21 @@
 package com.tomgibara.perfect;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import com.tomgibara.hashing.Hash;
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.hashing.Hashing;
+import com.tomgibara.perfect.ConstructionObserver.Failure;
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.perfect.ConstructionContext.Timing;
 import com.tomgibara.streams.StreamSerializer;
 
 /**
@@ -23,14 +32,44 @@ import com.tomgibara.streams.StreamSerializer;
  */
 public class Perfectionist<T> {
 
+	private static final int INITIAL_CAPACITY = 1024;
+	// the greatest number of hash values sampled before checking a hash over the whole domain
+	private static final int MAX_SAMPLE_SIZE = 1 << 18;
+	// the sample never exceeds this fraction of the domain
+	private static final int MIN_SAMPLE_DIVISOR = 4;
+	// the number of collisions within the sample below which screening is not worthwhile
+	private static final double MIN_EXPECTED_COLLISIONS = 3.0;
+
 	private final PerfectDomain<T> domain;
 	private final int maxSeedAttempts;
 	private final Random random;
+	private final ConstructionContext context;
 
 	Perfectionist(PerfectDomain<T> domain, int maxSeedAttempts, Random random) {
+		this(domain, maxSeedAttempts, random, ConstructionContext.NONE);
+	}
+
+	Perfectionist(PerfectDomain<T> domain, int maxSeedAttempts, Random random, ConstructionContext context) {
 		this.domain = domain;
 		this.maxSeedAttempts = maxSeedAttempts;
 		this.random = random;
+		this.context = context;
+	}
+
+	/**
+	 * A perfectionist that operates over the same domain with the same
+	 * parameters as this object, but which constructs hashes within the
+	 * supplied limits. The limits also apply to the minimization of any perfect
+	 * hashes that the returned object produces.
+	 *
+	 * @param limits
+	 *            the limits within which hashes are constructed
+	 * @return a perfectionist that respects the supplied limits
+	 * @see ConstructionLimits
+	 */
+	public Perfectionist<T> limitedBy(ConstructionLimits limits) {
+		if (limits == null) throw new IllegalArgumentException("null limits");
+		return new Perfectionist<>(domain, maxSeedAttempts, random, context.withLimits(limits));
 	}
 
 	/**
@@ -45,7 +84,7 @@ public class Perfectionist<T> {
 	 */
 	public Perfect<T> assumedPerfect(Hasher<T> hasher) {
 		if (hasher == null) throw new IllegalArgumentException("null hasher");
-		return new Perfect<>(hasher, domain, random);
+		return new Perfect<>(hasher, domain, random, context);
 	}
 
 	/**
@@ -81,7 +120,7 @@ public class Perfectionist<T> {
 	 * @return a perfect hash based on the supplied hasher, or empty
 	 */
 	public Optional<Perfect<T>> maybePerfect(Hasher<T> hasher) {
-		return domain.isPerfect(hasher) ? Optional.of(new Perfect<>(hasher, domain, random)) : Optional.empty();
+		return isPerfect(hasher) ? Optional.of(new Perfect<>(hasher, domain, random, context)) : Optional.empty();
 	}
 
 	/**
@@ -128,14 +167,235 @@ public class Perfectionist<T> {
 		return perfect(serializer, hash, s -> hash.seeded(serializer, s));
 	}
 
+	/**
+	 * <p>
+	 * Attempts to create a perfect hash from the byte-serialized form of the
+	 * domain values, making a single pass over the domain. Rather than testing
+	 * candidate hashes one at a time, as {@link #perfect(StreamSerializer)}
+	 * does, every candidate is evaluated at once: each value is serialized only
+	 * once and its bytes are supplied to all of the candidate hashes. The
+	 * number of candidates is the maximum number of seed attempts with which
+	 * this object was constructed, and the first candidate found to be perfect
+	 * is returned.
+	 *
+	 * <p>
+	 * This method is preferable when the domain values are expensive to
+	 * produce, for example when they are read from a file or database cursor.
+	 * In exchange, the hash values of all candidates are retained
+	 * concurrently, requiring eight bytes of memory per value for each
+	 * candidate.
+	 *
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @return a perfect hash over the domain values
+	 * @throws PerfectionException
+	 *             if none of the candidate hashes is perfect
+	 * @see #perfect(StreamSerializer)
+	 */
+	public Perfect<T> perfectInSinglePass(StreamSerializer<T> serializer) throws PerfectionException {
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return perfectInSinglePass(serializer, Hashing.murmur3Int(),
+				s -> Hashing.murmur3Int(s.intValue()).hasher(serializer),
+				s -> Hashing.murmur3Int(s.intValue()).hasher(SerialBuffer.SERIALIZER));
+	}
+
+	/**
+	 * Attempts to create a perfect hash from the byte-serialized form of the
+	 * domain values using a specified hash, making a single pass over the
+	 * domain. The hash must depend only on the bytes written by the
+	 * serializer.
+	 *
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param hash
+	 *            an explicit hash algorithm to use over the value
+	 *            byte-serializations
+	 * @return a perfect hash over the domain values
+	 * @throws PerfectionException
+	 *             if none of the candidate hashes is perfect
+	 * @see #perfectInSinglePass(StreamSerializer)
+	 */
+	public Perfect<T> perfectInSinglePass(StreamSerializer<T> serializer, Hash hash) throws PerfectionException {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return perfectInSinglePass(serializer, hash,
+				s -> hash.seeded(serializer, s),
+				s -> hash.seeded(SerialBuffer.SERIALIZER, s));
+	}
+
+	/**
+	 * <p>
+	 * Attempts to create a perfect hash from the byte-serialized form of the
+	 * domain values asynchronously, using the supplied executor. The returned
+	 * future completes with the hash that {@link #perfect(StreamSerializer)}
+	 * would return, or exceptionally with the exception it would raise.
+	 *
+	 * <p>
+	 * Cancelling the returned future cancels construction: construction stops
+	 * at the next point at which limits are checked (see
+	 * {@link ConstructionLimits}). Progress may be monitored by supplying an
+	 * observer when this perfectionist is created (see
+	 * {@link PerfectDomain#using(int, Random, ConstructionObserver)}); its
+	 * events are reported on the thread performing construction.
+	 *
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param executor
+	 *            the executor with which to construct the hash
+	 * @return a future perfect hash over the domain values
+	 * @see #perfect(StreamSerializer)
+	 */
+	public CompletableFuture<Perfect<T>> perfectAsync(StreamSerializer<T> serializer, Executor executor) {
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return async(executor, p -> p.perfect(serializer));
+	}
+
+	/**
+	 * Attempts to create a perfect hash from the byte-serialized form of the
+	 * domain values asynchronously, using a specified hash.
+	 *
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param hash
+	 *            an explicit hash algorithm to use over the value
+	 *            byte-serializations
+	 * @param executor
+	 *            the executor with which to construct the hash
+	 * @return a future perfect hash over the domain values
+	 * @see #perfectAsync(StreamSerializer, Executor)
+	 * @see #perfect(StreamSerializer, Hash)
+	 */
+	public CompletableFuture<Perfect<T>> perfectAsync(StreamSerializer<T> serializer, Hash hash, Executor executor) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		return async(executor, p -> p.perfect(serializer, hash));
+	}
+
 	// private utility methods
 
+	// the perfect hash produced is subject to the limits of this perfectionist, not those of the future
+	private CompletableFuture<Perfect<T>> async(Executor executor, Function<Perfectionist<T>, Perfect<T>> construction) {
+		return context.async(executor, c ->
+			construction.apply(new Perfectionist<>(domain, maxSeedAttempts, random, c)).limitedBy(context.limits)
+		);
+	}
+
+	// the first candidate is unseeded, consistent with the sequential search;
+	// candidates hash the serialized bytes of each value, yielding the same hash
+	// values as the corresponding hashers over the values themselves
+	private Perfect<T> perfectInSinglePass(StreamSerializer<T> serializer, Hash hash, Function<Long, Hasher<T>> seeded, Function<Long, Hasher<SerialBuffer>> seededBuffer) {
+		int k = Math.max(maxSeedAttempts, 1);
+		long[] seeds = new long[k];
+		List<Hasher<SerialBuffer>> candidates = new ArrayList<>(k);
+		candidates.add(hash.hasher(SerialBuffer.SERIALIZER));
+		for (int j = 1; j < k; j++) {
+			seeds[j] = random.nextLong();
+			candidates.add(seededBuffer.apply(seeds[j]));
+		}
+		int bits = candidates.get(0).getSize().getBits();
+		long mask = bits >= 64 ? -1L : (1L << bits) - 1L;
+
+		// the single pass: record the hash values of every candidate, together with a digest of the bytes
+		Timing timing = context.start();
+		SerialBuffer buffer = new SerialBuffer();
+		long[][] hashes = new long[k + 1][INITIAL_CAPACITY];
+		int count = 0;
+		for (T value : domain.getValues()) {
+			if (count % ConstructionContext.CHECK_INTERVAL == 0) context.check(Phase.PERFECTION_CHECK, 0, count);
+			if (count == hashes[0].length) {
+				int capacity = count + (count >> 1);
+				context.checkMemory(Phase.PERFECTION_CHECK, 0, 8L * (k + 1) * capacity);
+				for (int j = 0; j <= k; j++) hashes[j] = Arrays.copyOf(hashes[j], capacity);
+			}
+			buffer.serialize(serializer, value);
+			for (int j = 0; j < k; j++) {
+				hashes[j][count] = candidates.get(j).longHashValue(buffer) & mask;
+			}
+			hashes[k][count] = buffer.digest();
+			count++;
+		}
+		timing.stop(Phase.PERFECTION_CHECK);
+
+		// identify the first candidate that distinguishes every value
+		for (int j = 0; j < k; j++) {
+			context.started(Phase.SEED_SEARCH, j);
+			boolean distinct = isDistinct(hashes[j], count);
+			hashes[j] = null;
+			// hashes wider than 64 bits may still be perfect if their low bits collide
+			if (distinct || bits > 64) {
+				OptionalLong seed = j == 0 ? OptionalLong.empty() : OptionalLong.of(seeds[j]);
+				Hasher<T> hasher = seed.isPresent() ? seeded.apply(seed.getAsLong()) : hash.hasher(serializer);
+				if (distinct || isPerfect(hasher)) {
+					context.succeeded(Phase.SEED_SEARCH, j);
+					return new Perfect<>(hasher, domain, random, context, seed);
+				}
+			}
+			context.failed(Phase.SEED_SEARCH, j, Failure.NOT_PERFECT);
+		}
+		if (!isDistinct(hashes[k], count) && !isInjective(serializer)) throw new PerfectionException("serializer not injective");
+		throw new PerfectionException("unable to find hash function after " + k);
+	}
+
+	private boolean isPerfect(Hasher<T> hasher) {
+		return isPerfectOverSample(hasher) && context.check(Phase.PERFECTION_CHECK, domain, d -> d.isPerfect(hasher));
+	}
+
+	// a cheap test that rejects most hashes that are unlikely to be perfect;
+	// the sample is limited to a small fraction of the domain, and the test is
+	// only made when a random hash is expected to produce several collisions
+	// within it (s^2/2R for s sampled values and a range of R), since a sample
+	// that expects fewer passes most imperfect hashes while adding to the cost
+	// of every candidate; any collision between the sampled values is conclusive
+	private boolean isPerfectOverSample(Hasher<T> hasher) {
+		int bits = hasher.getSize().getBits();
+		// wider hash values cannot be compared exactly as longs
+		if (bits > PerfectDomain.LONG_BIT_CUTOFF) return true;
+		int size = domain.getValues().size();
+		// over a small fraction of the domain, so that the full check is substantially more costly
+		int sampleSize = (int) Math.min(Math.min(Math.sqrt(Math.scalb(8.0, bits)), MAX_SAMPLE_SIZE), size / MIN_SAMPLE_DIVISOR);
+		// too few collisions are expected for the screen to reject most imperfect hashes
+		if ((double) sampleSize * sampleSize / Math.scalb(2.0, bits) < MIN_EXPECTED_COLLISIONS) return true;
+		Timing timing = context.start();
+		long[] hashes = new long[sampleSize];
+		int[] count = {0};
+		Perfect.forFirst(domain.getValues(), sampleSize, value -> {
+			if (count[0] % ConstructionContext.CHECK_INTERVAL == 0) context.check(Phase.PERFECTION_CHECK, 0, count[0]);
+			hashes[count[0]++] = hasher.longHashValue(value);
+		});
+		boolean distinct = isDistinct(hashes, count[0]);
+		timing.stop(Phase.PERFECTION_CHECK);
+		return distinct;
+	}
+
+	private boolean isInjective(StreamSerializer<T> serializer) {
+		return context.check(Phase.INJECTIVITY_CHECK, domain, d -> d.isInjective(serializer));
+	}
+
+	// sorts the values in the process
+	private static boolean isDistinct(long[] values, int length) {
+		Arrays.sort(values, 0, length);
+		for (int i = 1; i < length; i++) {
+			if (values[i] == values[i - 1]) return false;
+		}
+		return true;
+	}
+
 	private Perfect<T> perfect(StreamSerializer<T> serializer, Hash hash, Function<Long, Hasher<T>> seeded) {
 		for (int i = 0; i < maxSeedAttempts; i++) {
+			context.check(Phase.SEED_SEARCH, i, 0L);
+			context.started(Phase.SEED_SEARCH, i);
 			// after two attempts, doubt the serializer
-			if (i == 2 && !domain.isInjective(serializer)) throw new PerfectionException("serializer not injective");
-			Hasher<T> hasher = i == 0 ?  hash.hasher(serializer) : seeded.apply((random.nextLong()));
-			if (domain.isPerfect(hasher)) return new Perfect<>(hasher, domain, random);
+			if (i == 2 && !isInjective(serializer)) {
+				context.failed(Phase.SEED_SEARCH, i, Failure.NOT_INJECTIVE);
+				throw new PerfectionException("serializer not injective");
+			}
+			OptionalLong seed = i == 0 ? OptionalLong.empty() : OptionalLong.of(random.nextLong());
+			Hasher<T> hasher = seed.isPresent() ? seeded.apply(seed.getAsLong()) : hash.hasher(serializer);
+			if (isPerfect(hasher)) {
+				context.succeeded(Phase.SEED_SEARCH, i);
+				return new Perfect<>(hasher, domain, random, context, seed);
+			}
+			context.failed(Phase.SEED_SEARCH, i, Failure.NOT_PERFECT);
 		}
 		throw new PerfectionException("unable to find hash function after " + maxSeedAttempts);
 	}
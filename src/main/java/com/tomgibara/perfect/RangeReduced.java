@@ -0,0 +1,99 @@
+package com.tomgibara.perfect;
+
+import java.util.Optional;
+
+import com.tomgibara.bits.BitStore;
+import com.tomgibara.bits.Bits;
+import com.tomgibara.hashing.Hasher;
+
+/**
+ * <p>
+ * A perfect hash into a range that is a small multiple of the domain size.
+ * Instances are derived from perfect hashes via
+ * {@link Perfect#rangeReduced(double)}.
+ *
+ * <p>
+ * The hasher returned by this {@link #getHasher()} is guaranteed to be perfect
+ * over its domain, with hash values in the range [0,<i>r</i>) where <i>r</i>
+ * is the value returned by {@link #getRange()}. Unlike a {@link Minimal} hash,
+ * some values in the range are not the hash of any domain value, but such
+ * hashes are typically much faster to construct. They are suited to uses that
+ * can tolerate a sparse range, such as bitmap indexes and direct-addressed
+ * tables.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of values over which the hash is defined
+ */
+public final class RangeReduced<T> extends DomainHash<T> {
+
+	private final int range;
+	// slots is assigned last, after occupied, so that it may guard both
+	private volatile Object[] slots = null;
+	private volatile BitStore occupied = null;
+
+	RangeReduced(Hasher<T> hasher, PerfectDomain<T> domain) {
+		super(hasher, domain);
+		range = hasher.getSize().asInt();
+	}
+
+	// accessors
+
+	/**
+	 * The number of possible hash values. Every hash value of a domain value
+	 * is non-negative and less than the range.
+	 *
+	 * @return the range of the hash
+	 */
+	public int getRange() {
+		return range;
+	}
+
+	// methods
+
+	/**
+	 * Creates a new empty set that uses a bit field, with a bit for each value
+	 * in the range of the hash, to record membership. The set can only contain
+	 * elements from the domain associated with this hash.
+	 *
+	 * @return a bit field backed set
+	 * @see Minimal#newSet()
+	 */
+	public MinimalSet<T> newSet() {
+		Object[] slots = this.slots;
+		if (slots == null) {
+			synchronized (this) {
+				if (this.slots == null) populate();
+				slots = this.slots;
+			}
+		}
+		return new MinimalSet<>(hasher, keys(slots), occupied);
+	}
+
+	// private utility methods
+
+	private DomainKeys<T> keys(Object[] slots) {
+		Optional<Class<T>> type = domain.getType();
+		return new DomainKeys<T>() {
+			@Override public int size() { return range; }
+			@Override @SuppressWarnings("unchecked") public T get(int index) { return (T) slots[index]; }
+			@Override public boolean isCandidate(Object o) { return type.isPresent() ? type.get().isInstance(o) : o != null; }
+			@Override public boolean matches(int index, T value) { return slots[index] != null && slots[index].equals(value); }
+		};
+	}
+
+	// called with the lock held
+	private void populate() {
+		Object[] slots = new Object[range];
+		BitStore occupied = Bits.store(range);
+		for (T value : domain.getValues()) {
+			int index = hasher.intHashValue(value);
+			slots[index] = value;
+			occupied.setBit(index, true);
+		}
+		this.occupied = occupied.immutable();
+		this.slots = slots;
+	}
+
+}
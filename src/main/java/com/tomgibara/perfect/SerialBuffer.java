@@ -0,0 +1,73 @@
+package com.tomgibara.perfect;
+
+import java.util.Arrays;
+
+import com.tomgibara.streams.StreamSerializer;
+import com.tomgibara.streams.WriteStream;
+
+// a reusable buffer into which values can be serialized
+final class SerialBuffer implements WriteStream {
+
+	// writes the current contents of a buffer
+	static final StreamSerializer<SerialBuffer> SERIALIZER = (b, s) -> s.writeBytes(b.bytes, 0, b.length);
+
+	private byte[] bytes;
+	private int length = 0;
+
+	SerialBuffer() {
+		bytes = new byte[64];
+	}
+
+	// serializes the value into this buffer, replacing any previous contents
+	<T> SerialBuffer serialize(StreamSerializer<T> serializer, T value) {
+		length = 0;
+		serializer.serialize(value, this);
+		return this;
+	}
+
+	// the backing array, valid up to length
+	byte[] bytes() {
+		return bytes;
+	}
+
+	int length() {
+		return length;
+	}
+
+	long digest() {
+		return digest(0L);
+	}
+
+	long digest(long seed) {
+		return Digests.digest(bytes, 0, length, seed);
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(bytes, length);
+	}
+
+	// write stream methods
+
+	@Override
+	public void writeByte(byte v) {
+		ensureCapacity(1);
+		bytes[length++] = v;
+	}
+
+	@Override
+	public void writeBytes(byte[] bs, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(bs, off, bytes, length, len);
+		length += len;
+	}
+
+	// private utility methods
+
+	private void ensureCapacity(int count) {
+		int required = length + count;
+		if (required > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+		}
+	}
+
+}
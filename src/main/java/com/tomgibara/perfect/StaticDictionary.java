@@ -0,0 +1,350 @@
+package com.tomgibara.perfect;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.function.Function;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.hashing.Hashing;
+import com.tomgibara.perfect.BMZ.BMZHasher;
+import com.tomgibara.perfect.BMZ.Edges;
+import com.tomgibara.streams.StreamSerializer;
+
+/**
+ * <p>
+ * An immutable dictionary of byte-string keys to byte-string values that is
+ * read directly from a memory-mapped file. Files are written by
+ * {@link #write(Path, PerfectDomain, Function, Function)} and opened by
+ * {@link #open(Path)}.
+ *
+ * <p>
+ * A dictionary file records a minimal perfect hash over the keys, the keys
+ * themselves (against which lookups are verified) and the values, with keys
+ * and values located via offset tables so that both may be of variable
+ * length. Opening a dictionary does not deserialize any part of the file:
+ * lookups hash the supplied key, read the hash table from the mapped file and
+ * compare the key in place. Values are returned as read-only views of the
+ * mapped file. Since the file is only ever read, any number of processes on a
+ * host may share a single cached copy of its pages.
+ *
+ * <p>
+ * Dictionary files are limited to 2GB. Dictionaries are safe for concurrent
+ * use by multiple threads.
+ *
+ * @author Tom Gibara
+ */
+public final class StaticDictionary {
+
+	// statics
+
+	private static final int MAGIC = 0x50534431; // "PSD1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+	private static final long SEED = 0L;
+	private static final int MAX_SEED_ATTEMPTS = 3;
+	private static final int MAX_ATTEMPTS = 100;
+	private static final double C = 1.15;
+
+	private static final StreamSerializer<byte[]> serializer = (b, w) -> w.writeBytes(b);
+
+	/**
+	 * Writes a dictionary over a domain of strings. Keys are recorded in their
+	 * UTF-8 encoding so that they may be looked up via
+	 * {@link #get(String)}.
+	 *
+	 * @param path
+	 *            the file to which the dictionary is written
+	 * @param domain
+	 *            the keys of the dictionary
+	 * @param values
+	 *            supplies the value for each key
+	 * @throws IOException
+	 *             if the file could not be written
+	 * @throws PerfectionException
+	 *             if a minimal hash over the keys could not be constructed
+	 * @see #write(Path, PerfectDomain, Function, Function)
+	 */
+	public static void write(Path path, PerfectDomain<String> domain, Function<? super String, byte[]> values) throws IOException, PerfectionException {
+		write(path, domain, s -> s.getBytes(StandardCharsets.UTF_8), values);
+	}
+
+	/**
+	 * Writes a dictionary over a domain of values, each of which is
+	 * identified in the dictionary by its byte encoding. The file is written
+	 * atomically where the file system supports it, replacing any existing
+	 * file.
+	 *
+	 * @param <K>
+	 *            the type of values in the domain
+	 * @param path
+	 *            the file to which the dictionary is written
+	 * @param domain
+	 *            the keys of the dictionary
+	 * @param keys
+	 *            encodes each domain value into its key bytes; the encoding
+	 *            must be injective over the domain
+	 * @param values
+	 *            supplies the value for each key
+	 * @throws IOException
+	 *             if the file could not be written
+	 * @throws PerfectionException
+	 *             if a minimal hash over the keys could not be constructed
+	 */
+	public static <K> void write(Path path, PerfectDomain<K> domain, Function<? super K, byte[]> keys, Function<? super K, byte[]> values) throws IOException, PerfectionException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		if (domain == null) throw new IllegalArgumentException("null domain");
+		if (keys == null) throw new IllegalArgumentException("null keys");
+		if (values == null) throw new IllegalArgumentException("null values");
+
+		// hash the encoded keys
+		List<byte[]> encoded = new ArrayList<>(domain.getValues().size());
+		for (K value : domain.getValues()) {
+			encoded.add(encode(keys, value, "null key"));
+		}
+		Perfect<byte[]> perfect = Perfect.over(encoded).using(MAX_SEED_ATTEMPTS, new Random(SEED)).perfect(serializer);
+		BMZHasher<byte[]> hasher = (BMZHasher<byte[]>) perfect.minimizedWithBMZ(MAX_ATTEMPTS, C).getHasher();
+
+		// order keys and values by hash value, relying on a consistent iteration order
+		int size = encoded.size();
+		byte[][] orderedKeys = new byte[size][];
+		byte[][] orderedValues = new byte[size][];
+		int index = 0;
+		for (K value : domain.getValues()) {
+			byte[] key = encoded.get(index++);
+			int hash = hasher.intHashValue(key);
+			orderedKeys[hash] = key;
+			orderedValues[hash] = encode(values, value, "null value");
+		}
+		encoded = null;
+
+		int[] g = hasher.getG();
+		long length = HEADER_SIZE + 4L * g.length + 8L * (size + 1) + totalLength(orderedKeys) + totalLength(orderedValues);
+		if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("dictionary too large");
+
+		Path parent = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				OptionalLong seed = perfect.getSeed();
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(size);
+				out.writeInt(seed.isPresent() ? 1 : 0);
+				out.writeLong(seed.orElse(0L));
+				out.writeInt(hasher.getSeed1());
+				out.writeInt(hasher.getSeed2());
+				out.writeInt(g.length);
+				for (int v : g) {
+					out.writeInt(v);
+				}
+				writeOffsets(out, orderedKeys);
+				writeOffsets(out, orderedValues);
+				for (byte[] key : orderedKeys) {
+					out.write(key);
+				}
+				for (byte[] value : orderedValues) {
+					out.write(value);
+				}
+			}
+			try {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Opens a dictionary by memory-mapping the specified file. The file must
+	 * not be modified while the dictionary is in use.
+	 *
+	 * @param path
+	 *            a file written by
+	 *            {@link #write(Path, PerfectDomain, Function, Function)}
+	 * @return the dictionary recorded in the file
+	 * @throws IOException
+	 *             if the file could not be mapped, or is not a valid dictionary
+	 */
+	public static StaticDictionary open(Path path) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) throw new IOException("dictionary file too large");
+			return new StaticDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0L, length));
+		}
+	}
+
+	// fields
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final Edges<byte[]> edges;
+	private final int gStart;
+	private final int keyOffsetsStart;
+	private final int valueOffsetsStart;
+	private final int keysStart;
+	private final int valuesStart;
+
+	// constructors
+
+	private StaticDictionary(ByteBuffer buffer) throws IOException {
+		int length = buffer.capacity();
+		if (length < HEADER_SIZE) throw new IOException("truncated dictionary file");
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) throw new IOException("unrecognized dictionary file");
+		size = buffer.getInt(8);
+		boolean seeded = buffer.getInt(12) != 0;
+		long seed = buffer.getLong(16);
+		int seed1 = buffer.getInt(24);
+		int seed2 = buffer.getInt(28);
+		int vertices = buffer.getInt(32);
+		if (size < 0 || vertices < size) throw new IOException("invalid dictionary file");
+		long offsetsStart = HEADER_SIZE + 4L * vertices;
+		long dataStart = offsetsStart + 8L * (size + 1);
+		if (dataStart > length) throw new IOException("truncated dictionary file");
+		gStart = HEADER_SIZE;
+		keyOffsetsStart = (int) offsetsStart;
+		valueOffsetsStart = keyOffsetsStart + 4 * (size + 1);
+		keysStart = (int) dataStart;
+		valuesStart = keysStart + buffer.getInt(keyOffsetsStart + 4 * size);
+		if (valuesStart < keysStart || (long) valuesStart + buffer.getInt(valueOffsetsStart + 4 * size) != length) throw new IOException("invalid dictionary file");
+		this.buffer = buffer.asReadOnlyBuffer();
+		Hasher<byte[]> perfect = seeded ?
+				Hashing.murmur3Int((int) seed).hasher(serializer) :
+				Hashing.murmur3Int().hasher(serializer);
+		edges = new Edges<>(perfect, seed1, seed2, vertices);
+	}
+
+	// accessors
+
+	/**
+	 * The number of keys in the dictionary.
+	 *
+	 * @return the dictionary size
+	 */
+	public int size() {
+		return size;
+	}
+
+	// methods
+
+	/**
+	 * The memory occupied by this dictionary. The table, offsets, keys and
+	 * values reside in the mapped file, outside of the heap.
+	 *
+	 * @return the footprint of this dictionary
+	 */
+	public Footprint footprint() {
+		List<Footprint.Component> components = new ArrayList<>(4);
+		components.add(new Footprint.Component("hasher", Footprint.objectBytes(36), keyOffsetsStart - gStart));
+		components.add(new Footprint.Component("offsets", 0L, keysStart - keyOffsetsStart));
+		components.add(new Footprint.Component("keys", 0L, valuesStart - keysStart));
+		components.add(new Footprint.Component("values", 0L, buffer.capacity() - valuesStart));
+		return new Footprint(size, components);
+	}
+
+	/**
+	 * Whether the dictionary contains the specified key.
+	 *
+	 * @param key
+	 *            the key bytes
+	 * @return true if the dictionary contains the key, false otherwise
+	 */
+	public boolean containsKey(byte[] key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * The value of the specified key. The returned buffer is a read-only view
+	 * of the mapped file; its position is zero and its limit is the length of
+	 * the value.
+	 *
+	 * @param key
+	 *            the key bytes
+	 * @return the value of the key, or null if the dictionary does not contain
+	 *         the key
+	 */
+	public ByteBuffer get(byte[] key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		int index = indexOf(key);
+		if (index < 0) return null;
+		int start = valuesStart + buffer.getInt(valueOffsetsStart + 4 * index);
+		int end = valuesStart + buffer.getInt(valueOffsetsStart + 4 * index + 4);
+		ByteBuffer value = buffer.duplicate();
+		// casts avoid covariant overrides absent from earlier platforms
+		((Buffer) value).limit(end);
+		((Buffer) value).position(start);
+		return value.slice();
+	}
+
+	/**
+	 * The value of the specified string key, which is looked up via its UTF-8
+	 * encoding.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value of the key, or null if the dictionary does not contain
+	 *         the key
+	 * @see #get(byte[])
+	 */
+	public ByteBuffer get(String key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		return get(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// private utility methods
+
+	private int indexOf(byte[] key) {
+		long edge = edges.edge(key);
+		int index = buffer.getInt(gStart + 4 * BMZ.a(edge)) + buffer.getInt(gStart + 4 * BMZ.b(edge));
+		if (index < 0 || index >= size) return -1;
+		int start = buffer.getInt(keyOffsetsStart + 4 * index);
+		int end = buffer.getInt(keyOffsetsStart + 4 * index + 4);
+		if (end - start != key.length) return -1;
+		int position = keysStart + start;
+		for (int i = 0; i < key.length; i++) {
+			if (buffer.get(position + i) != key[i]) return -1;
+		}
+		return index;
+	}
+
+	private static <K> byte[] encode(Function<? super K, byte[]> fn, K value, String message) {
+		byte[] bytes = fn.apply(value);
+		if (bytes == null) throw new IllegalArgumentException(message);
+		return bytes;
+	}
+
+	private static long totalLength(byte[][] arrays) {
+		long length = 0L;
+		for (byte[] array : arrays) {
+			length += array.length;
+		}
+		return length;
+	}
+
+	// records the start of each array relative to the first, followed by their total length
+	private static void writeOffsets(DataOutputStream out, byte[][] arrays) throws IOException {
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] array : arrays) {
+			offset += array.length;
+			out.writeInt(offset);
+		}
+	}
+
+}
@@ -0,0 +1,275 @@
+package com.tomgibara.perfect;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import com.tomgibara.perfect.Fuse.Peeling;
+import com.tomgibara.streams.StreamSerializer;
+
+/**
+ * <p>
+ * A static function that maps the values of a {@link PerfectDomain} to
+ * integers of a fixed number of bits. Functions are built via
+ * {@link #build(PerfectDomain, StreamSerializer, ToIntFunction, int)}.
+ *
+ * <p>
+ * Unlike a {@link MinimalMap}, a static function does not retain the domain
+ * values, nor a store slot per value; it occupies approximately 1.13 bits per
+ * value for each bit of the function. This makes it suitable for large
+ * read-only mappings into small ranges, such as routing keys to shards. The
+ * consequence is that the function cannot detect values outside of the domain:
+ * the result of {@link #get(Object)} for such values is arbitrary.
+ *
+ * <p>
+ * The function is a binary fuse structure: each value is mapped to three
+ * positions in adjacent segments of an array of k-bit cells, and the array is
+ * populated by peeling the resulting hypergraph, so that the exclusive-or of
+ * the three cells of each domain value equals its image. Lookups read three
+ * cells and do not allocate, beyond the serialization of the value.
+ *
+ * <p>
+ * Functions may be written to a stream via {@link #writeTo(OutputStream)} and
+ * read back via {@link #readFrom(InputStream, StreamSerializer)}, supplying
+ * the serializer with which the function was built. Functions are immutable
+ * and safe for concurrent use by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of values in the domain
+ */
+public final class StaticFunction<T> {
+
+	// statics
+
+	private static final int MAGIC = 0x50534631; // "PSF1"
+	private static final int VERSION = 1;
+	private static final int MAX_SEED_ATTEMPTS = 3;
+	private static final int MAX_ATTEMPTS = 100;
+
+	/**
+	 * Builds a static function over the domain.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param domain
+	 *            the values over which the function is defined
+	 * @param serializer
+	 *            a serializer that can operate over all domain values
+	 * @param function
+	 *            supplies the image of each domain value, which must be
+	 *            representable as an unsigned integer of the specified number
+	 *            of bits
+	 * @param bits
+	 *            the number of bits in the images of the function, between 1
+	 *            and 32 inclusive
+	 * @return a static function that agrees with the supplied function over
+	 *         the domain
+	 * @throws PerfectionException
+	 *             if the function could not be constructed
+	 */
+	public static <T> StaticFunction<T> build(PerfectDomain<T> domain, StreamSerializer<T> serializer, ToIntFunction<? super T> function, int bits) throws PerfectionException {
+		if (domain == null) throw new IllegalArgumentException("null domain");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		if (function == null) throw new IllegalArgumentException("null function");
+		if (bits < 1) throw new IllegalArgumentException("non-positive bits");
+		if (bits > 32) throw new IllegalArgumentException("bits exceeds 32");
+
+		int size = domain.getValues().size();
+		long mask = mask(bits);
+		int[] images = new int[size];
+		int index = 0;
+		for (T value : domain.getValues()) {
+			int image = function.applyAsInt(value);
+			if ((image & 0xffffffffL & ~mask) != 0L) throw new IllegalArgumentException("image exceeds bits: " + image);
+			images[index++] = image;
+		}
+
+		Random random = new Random(0L);
+		SerialBuffer buffer = new SerialBuffer();
+		long[] keys = new long[size];
+		for (int seedAttempt = 0; seedAttempt < MAX_SEED_ATTEMPTS; seedAttempt++) {
+			long digestSeed = random.nextLong();
+			index = 0;
+			for (T value : domain.getValues()) {
+				keys[index++] = buffer.serialize(serializer, value).digest(digestSeed);
+			}
+			if (!isDistinct(keys)) continue;
+			Fuse fuse = Fuse.forSize(size);
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+				Fuse seeded = fuse.withSeed(random.nextLong());
+				Peeling peeling = seeded.peel(keys, size);
+				if (peeling != null) return new StaticFunction<>(serializer, digestSeed, seeded, bits, cells(seeded, peeling, images, bits));
+			}
+			throw new PerfectionException("failed to construct function after " + MAX_ATTEMPTS);
+		}
+		throw new PerfectionException("unable to find distinct digests after " + MAX_SEED_ATTEMPTS + "; domain values may not be distinct");
+	}
+
+	/**
+	 * Reads a function that was written with {@link #writeTo(OutputStream)}.
+	 *
+	 * @param <T>
+	 *            the type of values in the domain
+	 * @param in
+	 *            the stream from which the function is read
+	 * @param serializer
+	 *            the serializer with which the function was built
+	 * @return the function
+	 * @throws IOException
+	 *             if the function could not be read
+	 */
+	public static <T> StaticFunction<T> readFrom(InputStream in, StreamSerializer<T> serializer) throws IOException {
+		if (in == null) throw new IllegalArgumentException("null in");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) throw new IOException("unrecognized function");
+		long digestSeed = data.readLong();
+		Fuse fuse = Fuse.of(data.readLong(), data.readInt(), data.readInt());
+		int bits = data.readInt();
+		if (fuse == null || bits < 1 || bits > 32 || data.readInt() != cellsLength(fuse, bits)) throw new IOException("invalid function");
+		long[] cells = new long[cellsLength(fuse, bits)];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = data.readLong();
+		}
+		return new StaticFunction<>(serializer, digestSeed, fuse, bits, cells);
+	}
+
+	private static int cellsLength(Fuse fuse, int bits) {
+		return (int) ((fuse.arrayLength * (long) bits + 63) >> 6);
+	}
+
+	private static long mask(int bits) {
+		return -1L >>> (64 - bits);
+	}
+
+	private static boolean isDistinct(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] == sorted[i - 1]) return false;
+		}
+		return true;
+	}
+
+	// assigns cells in reverse peeling order
+	private static long[] cells(Fuse fuse, Peeling peeling, int[] images, int bits) {
+		long[] cells = new long[cellsLength(fuse, bits)];
+		int[] h012 = new int[5];
+		for (int k = peeling.order.length - 1; k >= 0; k--) {
+			int i = peeling.order[k];
+			int found = peeling.found[k];
+			fuse.positions(peeling.hashes[i], h012);
+			long cell = (images[i] & 0xffffffffL) ^ cell(cells, h012[found + 1], bits) ^ cell(cells, h012[found + 2], bits);
+			setCell(cells, h012[found], bits, cell);
+		}
+		return cells;
+	}
+
+	private static long cell(long[] cells, int position, int bits) {
+		long offset = position * (long) bits;
+		int word = (int) (offset >> 6);
+		int shift = (int) offset & 63;
+		long value = cells[word] >>> shift;
+		if (shift + bits > 64) value |= cells[word + 1] << (64 - shift);
+		return value & mask(bits);
+	}
+
+	// only used on cells that have not been previously set
+	private static void setCell(long[] cells, int position, int bits, long value) {
+		long offset = position * (long) bits;
+		int word = (int) (offset >> 6);
+		int shift = (int) offset & 63;
+		cells[word] |= value << shift;
+		if (shift + bits > 64) cells[word + 1] |= value >>> (64 - shift);
+	}
+
+	// fields
+
+	private final StreamSerializer<T> serializer;
+	private final long digestSeed;
+	private final Fuse fuse;
+	private final int bits;
+	private final long[] cells;
+	private final ThreadLocal<SerialBuffer> buffers = ThreadLocal.withInitial(SerialBuffer::new);
+
+	// constructors
+
+	private StaticFunction(StreamSerializer<T> serializer, long digestSeed, Fuse fuse, int bits, long[] cells) {
+		this.serializer = serializer;
+		this.digestSeed = digestSeed;
+		this.fuse = fuse;
+		this.bits = bits;
+		this.cells = cells;
+	}
+
+	// accessors
+
+	/**
+	 * The number of bits in each image of the function.
+	 *
+	 * @return the number of bits per image
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * The number of bits occupied by the function cells.
+	 *
+	 * @return the size of the function in bits
+	 */
+	public long getBitCount() {
+		return cells.length * 64L;
+	}
+
+	// methods
+
+	/**
+	 * The image of a domain value under the function. The result is arbitrary
+	 * if the value is not a member of the domain.
+	 *
+	 * @param value
+	 *            a domain value
+	 * @return the image of the value, an integer of at most
+	 *         {@link #getBits()} bits
+	 */
+	public int get(T value) {
+		long key = buffers.get().serialize(serializer, value).digest(digestSeed);
+		long h = fuse.hash(key);
+		return (int) (cell(cells, fuse.position(h, 0), bits) ^ cell(cells, fuse.position(h, 1), bits) ^ cell(cells, fuse.position(h, 2), bits));
+	}
+
+	/**
+	 * Writes the function to a stream. The serializer with which values are
+	 * hashed is not written.
+	 *
+	 * @param out
+	 *            the stream to which the function is written
+	 * @throws IOException
+	 *             if the function could not be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(digestSeed);
+		data.writeLong(fuse.seed);
+		data.writeInt(fuse.segmentLength);
+		data.writeInt(fuse.segmentCount);
+		data.writeInt(bits);
+		data.writeInt(cells.length);
+		for (long cell : cells) {
+			data.writeLong(cell);
+		}
+		data.flush();
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.streams.StreamSerializer;
+
+public class AsyncTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testAsync() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Minimal<String> minimal = perfectionist(10000, ConstructionObserver.NONE)
+					.perfectAsync(ser, executor)
+					.thenCompose(p -> p.minimizedAsync(executor))
+					.get();
+			assertEquals(10000, minimal.getHasher().getSize().asInt());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		CompletableFuture<Perfect<String>> future = Perfect.over("a", "b").using(3, new Random(0L)).perfectAsync((s, w) -> { }, Runnable::run);
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PerfectionException);
+		}
+	}
+
+	@Test
+	public void testCancelledBeforeStart() {
+		List<Runnable> tasks = new ArrayList<>();
+		AtomicBoolean started = new AtomicBoolean();
+		ConstructionObserver observer = new ConstructionObserver() {
+			@Override
+			public void attemptStarted(Phase phase, int attempt) {
+				started.set(true);
+			}
+		};
+		CompletableFuture<Perfect<String>> future = perfectionist(100, observer).perfectAsync(ser, tasks::add);
+		assertTrue(future.cancel(false));
+		tasks.forEach(Runnable::run);
+		assertFalse(started.get());
+	}
+
+	@Test
+	public void testCancelledDuringMinimization() {
+		List<Runnable> tasks = new ArrayList<>();
+		AtomicReference<CompletableFuture<?>> reference = new AtomicReference<>(new CompletableFuture<>());
+		List<Phase> phases = new ArrayList<>();
+		ConstructionObserver observer = new ConstructionObserver() {
+			@Override
+			public void phaseCompleted(Phase phase, long durationNanos, long allocatedBytes) {
+				phases.add(phase);
+				if (phase == Phase.GRAPH_CONSTRUCTION) reference.get().cancel(false);
+			}
+		};
+		Perfect<String> perfect = perfectionist(10000, observer).perfect(ser);
+		CompletableFuture<Minimal<String>> future = perfect.minimizedAsync(MinimizationStrategy.fastestBuild(), tasks::add);
+		reference.set(future);
+		phases.clear();
+		tasks.forEach(Runnable::run);
+		assertTrue(future.isCancelled());
+		// construction stops at the first check following cancellation
+		assertFalse(phases.contains(Phase.CRITICAL_NODE_DETECTION));
+		// the perfect hash itself is unaffected by the cancelled future
+		assertEquals(10000, perfect.minimized().getHasher().getSize().asInt());
+	}
+
+	private static Perfectionist<String> perfectionist(int size, ConstructionObserver observer) {
+		return Perfect.over(TestValues.values(size)).using(3, new Random(0L), observer);
+	}
+
+}
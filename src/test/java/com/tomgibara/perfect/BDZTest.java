@@ -0,0 +1,38 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.streams.StreamSerializer;
+
+public class BDZTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testMinimal() {
+		for (int size : new int[] {0, 1, 2, 3, 10, 100, 10000}) {
+			List<String> values = TestValues.values(size);
+			Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect(ser).minimizedWithBDZ();
+			Hasher<String> hasher = minimal.getHasher();
+			assertEquals(size, hasher.getSize().asInt());
+			TestValues.assertDistinct(hasher, values, size);
+		}
+	}
+
+	@Test
+	public void testParameters() {
+		List<String> values = TestValues.values(10000);
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect(ser).minimizedWithBDZ();
+		MinimizationParameters parameters = minimal.getParameters().get();
+		assertTrue(parameters.getAttempts() >= 1);
+		assertTrue(parameters.getC() < 1.15);
+	}
+
+}
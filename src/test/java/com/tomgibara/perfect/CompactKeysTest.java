@@ -0,0 +1,68 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.hashing.Hashing;
+
+public class CompactKeysTest {
+
+	@Test
+	public void testStrings() {
+		String[] words = { "", "cat", "caf\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "\ud800", "dog" };
+		Minimal<String> minimal = Perfect.over(words).usingDefaults().perfect((s, w) -> w.writeChars(s)).minimized();
+		CompactKeys<String> keys = minimal.getCompactKeys();
+		assertEquals(words.length, keys.size());
+		Hasher<String> hasher = minimal.getHasher();
+		for (String word : words) {
+			int index = hasher.intHashValue(word);
+			assertEquals(word, keys.get(index));
+			assertTrue(keys.matches(index, word));
+			assertFalse(keys.matches(index, word + "x"));
+		}
+		assertFalse(keys.isCandidate(new byte[0]));
+
+		Minimal<String> compact = minimal.withCompactKeys();
+		assertTrue(compact.isUsingCompactKeys());
+		MinimalSet<String> set = compact.newSet();
+		set.fill();
+		assertEquals(Arrays.asList(words).size(), set.size());
+		assertTrue(set.contains("caf\u00e9"));
+		assertFalse(set.contains("cafe"));
+
+		MinimalMap<String, Integer> map = compact.mapsToTypedStorage(int.class).newMap();
+		map.put("dog", 4);
+		assertEquals(4, map.get("dog").intValue());
+		assertNull(map.get("whippet"));
+	}
+
+	@Test
+	public void testBytes() {
+		List<byte[]> values = Arrays.asList(new byte[] {}, new byte[] {1}, new byte[] {1, 2}, new byte[] {2, 1});
+		Minimal<byte[]> minimal = Perfect.over(values).usingDefaults().perfect((b, w) -> w.writeBytes(b)).minimized();
+		CompactKeys<byte[]> keys = minimal.getCompactKeys();
+		Hasher<byte[]> hasher = minimal.getHasher();
+		for (byte[] value : values) {
+			int index = hasher.intHashValue(value);
+			assertArrayEquals(value, keys.get(index));
+			assertTrue(keys.matches(index, value.clone()));
+		}
+		assertEquals(5, keys.arenaSize());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnsupported() {
+		Hasher<Integer> hasher = Hashing.objectHasher();
+		Perfect.over(1, 2, 3).usingDefaults().maybePerfect(hasher).get().minimized().getCompactKeys();
+	}
+
+}
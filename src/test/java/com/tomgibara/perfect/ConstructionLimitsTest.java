@@ -0,0 +1,100 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+import com.tomgibara.perfect.ConstructionProgress.Reason;
+import com.tomgibara.streams.StreamSerializer;
+
+public class ConstructionLimitsTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testNone() {
+		Minimal<String> minimal = perfectionist(10000).limitedBy(ConstructionLimits.none()).perfect(ser).minimized();
+		assertEquals(10000, minimal.getHasher().getSize().asInt());
+	}
+
+	@Test
+	public void testCancelled() {
+		ConstructionProgress progress = failure(() -> perfectionist(100).limitedBy(ConstructionLimits.none().withCancellation(() -> true)).perfect(ser));
+		assertEquals(Reason.CANCELLED, progress.getReason());
+		assertEquals(Phase.SEED_SEARCH, progress.getPhase());
+	}
+
+	@Test
+	public void testInterrupted() {
+		Thread.currentThread().interrupt();
+		try {
+			ConstructionProgress progress = failure(() -> perfectionist(100).limitedBy(ConstructionLimits.interruptible()).perfect(ser));
+			assertEquals(Reason.CANCELLED, progress.getReason());
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+	}
+
+	@Test
+	public void testDeadline() {
+		ConstructionLimits limits = ConstructionLimits.none().withDeadline(Instant.now().minusSeconds(1));
+		ConstructionProgress progress = failure(() -> perfectionist(100).limitedBy(limits).perfect(ser));
+		assertEquals(Reason.DEADLINE_EXCEEDED, progress.getReason());
+	}
+
+	@Test
+	public void testMemoryBudget() {
+		Perfect<String> perfect = perfectionist(10000).perfect(ser);
+		ConstructionProgress progress = failure(() -> perfect.limitedBy(ConstructionLimits.none().withMemoryBudget(1000)).minimized());
+		assertEquals(Reason.MEMORY_BUDGET_EXCEEDED, progress.getReason());
+		assertEquals(Phase.MINIMIZATION, progress.getPhase());
+		// a generous budget succeeds
+		perfect.limitedBy(ConstructionLimits.none().withMemoryBudget(100000000L)).minimized();
+	}
+
+	@Test
+	public void testCancelledDuringGraph() {
+		Perfect<String> perfect = perfectionist(10000).perfect(ser);
+		AtomicInteger checks = new AtomicInteger();
+		// the first check precedes the attempt, the second and third are made within graph construction
+		ConstructionLimits limits = ConstructionLimits.none().withCancellation(() -> checks.incrementAndGet() > 2);
+		ConstructionProgress progress = failure(() -> perfect.limitedBy(limits).minimized(MinimizationStrategy.fastestBuild()));
+		assertEquals(Reason.CANCELLED, progress.getReason());
+		assertEquals(Phase.GRAPH_CONSTRUCTION, progress.getPhase());
+		assertEquals(ConstructionContext.CHECK_INTERVAL, progress.getProcessed());
+	}
+
+	@Test
+	public void testUnlimitedFailure() {
+		try {
+			Perfect.over("a", "b").using(3, new Random(0L)).perfect((s, w) -> { });
+			fail();
+		} catch (PerfectionException e) {
+			assertFalse(e.getProgress().isPresent());
+		}
+	}
+
+	private static Perfectionist<String> perfectionist(int size) {
+		return Perfect.over(TestValues.values(size)).using(3, new Random(0L));
+	}
+
+	private static ConstructionProgress failure(Runnable construction) {
+		try {
+			construction.run();
+		} catch (PerfectionException e) {
+			assertTrue(e.getProgress().isPresent());
+			return e.getProgress().get();
+		}
+		fail("construction did not fail");
+		return null;
+	}
+
+}
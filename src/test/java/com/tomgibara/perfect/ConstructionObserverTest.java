@@ -0,0 +1,83 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+public class ConstructionObserverTest {
+
+	@Test
+	public void testEvents() {
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			values.add("value " + i);
+		}
+		Recorder recorder = new Recorder();
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L), recorder).perfect((s, w) -> w.writeChars(s)).minimized();
+		assertEquals(values.size(), minimal.getHasher().getSize().asInt());
+
+		assertTrue(recorder.succeeded.contains(Phase.SEED_SEARCH));
+		assertTrue(recorder.succeeded.contains(Phase.MINIMIZATION));
+		assertTrue(recorder.completed.containsAll(EnumSet.of(Phase.PERFECTION_CHECK, Phase.MINIMIZATION, Phase.GRAPH_CONSTRUCTION, Phase.CRITICAL_NODE_DETECTION, Phase.CRITICAL_ASSIGNMENT, Phase.NON_CRITICAL_ASSIGNMENT)));
+		assertTrue(recorder.started >= 2);
+		assertEquals(values.size(), recorder.edges);
+		assertTrue(recorder.vertices >= values.size());
+		assertTrue(recorder.passes > 0);
+	}
+
+	@Test
+	public void testMinimizer() {
+		Recorder recorder = new Recorder();
+		Perfect.over("a", "b", "c").usingDefaults().perfect((s, w) -> w.writeChars(s)).minimizedWithBMZ(10, 1.5, recorder);
+		assertTrue(recorder.succeeded.contains(Phase.MINIMIZATION));
+		assertEquals(0, recorder.passes);
+	}
+
+	private static final class Recorder implements ConstructionObserver {
+
+		final Set<Phase> succeeded = EnumSet.noneOf(Phase.class);
+		final Set<Phase> completed = EnumSet.noneOf(Phase.class);
+		int started;
+		int vertices;
+		int edges;
+		int passes;
+
+		@Override
+		public void attemptStarted(Phase phase, int attempt) {
+			started++;
+		}
+
+		@Override
+		public void attemptSucceeded(Phase phase, int attempt) {
+			succeeded.add(phase);
+		}
+
+		@Override
+		public void graphBuilt(int vertices, int edges) {
+			this.vertices = vertices;
+			this.edges = edges;
+		}
+
+		@Override
+		public void phaseCompleted(Phase phase, long durationNanos, long allocatedBytes) {
+			assertTrue(durationNanos >= 0L);
+			completed.add(phase);
+		}
+
+		@Override
+		public void uniquenessChecked(Phase phase, int passes, boolean unique) {
+			this.passes += passes;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+public class DomainSourceTest {
+
+	@Test
+	public void testStreamed() {
+		AtomicInteger streams = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		PerfectDomain<Integer> domain = Perfect.overStream(() -> {
+			streams.incrementAndGet();
+			return IntStream.range(0, 1000).boxed().onClose(closed::incrementAndGet);
+		}, 1000);
+		Collection<? extends Integer> values = domain.getValues();
+		assertEquals(1000, values.size());
+		assertEquals(0, streams.get());
+
+		int sum = 0;
+		for (Integer value : values) sum += value;
+		assertEquals(999 * 1000 / 2, sum);
+		assertEquals(1, streams.get());
+		assertEquals(1, closed.get());
+
+		Spliterator<? extends Integer> spliterator = values.spliterator();
+		assertEquals(1000, StreamSupport.stream(spliterator, true).count());
+	}
+
+	@Test
+	public void testSizedIterable() {
+		List<Integer> list = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+		Collection<? extends Integer> values = Perfect.over(list::iterator, 10).getValues();
+		assertEquals(10, values.size());
+		assertEquals(list, new ArrayList<>(values));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTooFew() {
+		new ArrayList<>(Perfect.overStream(() -> Stream.of(1, 2, 3), 4).getValues());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTooMany() {
+		new ArrayList<>(Perfect.overStream(() -> Stream.of(1, 2, 3), 2).getValues());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSize() {
+		Perfect.overStream(() -> Stream.of(1, 2, 3), -1);
+	}
+
+}
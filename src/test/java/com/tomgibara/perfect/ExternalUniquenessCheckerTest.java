@@ -0,0 +1,104 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+public class ExternalUniquenessCheckerTest {
+
+	@Test
+	public void testInMemory() throws IOException {
+		testChecker(64, 10000);
+	}
+
+	@Test
+	public void testMerged() throws IOException {
+		// 8192 values per run
+		testChecker(64, 100000);
+		testChecker(40, 100000);
+	}
+
+	@Test
+	public void testMultiLevelMerge() throws IOException {
+		// more runs than can be merged at once
+		testChecker(64, 600000);
+	}
+
+	@Test
+	public void testLimited() throws IOException {
+		Path directory = Files.createTempDirectory("perfect-test");
+		try {
+			List<Long> values = new ArrayList<>();
+			for (long i = 0; i < 100000; i++) {
+				values.add(i * 0x9e3779b97f4a7c15L);
+			}
+			// one check per interval while forming runs, cancelled during the merge
+			int runChecks = (values.size() + ConstructionContext.CHECK_INTERVAL - 1) / ConstructionContext.CHECK_INTERVAL;
+			AtomicInteger checks = new AtomicInteger();
+			ConstructionContext cancelled = ConstructionContext.NONE.withLimits(ConstructionLimits.none().withCancellation(() -> checks.incrementAndGet() > runChecks + 5));
+			try {
+				new ExternalUniquenessChecker<>(values, ExternalUniquenessChecker.MIN_MEMORY_BUDGET, directory, cancelled, Phase.PERFECTION_CHECK).isUnique(Long::longValue, 64);
+				fail();
+			} catch (PerfectionException e) {
+				ConstructionProgress progress = e.getProgress().get();
+				assertEquals(ConstructionProgress.Reason.CANCELLED, progress.getReason());
+				assertEquals(Phase.PERFECTION_CHECK, progress.getPhase());
+				assertEquals(5L * ConstructionContext.CHECK_INTERVAL, progress.getProcessed());
+			}
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(0L, files.count());
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	private void testChecker(int bits, int count) throws IOException {
+		Path directory = Files.createTempDirectory("perfect-test");
+		try {
+			Random r = new Random(0L);
+			List<Long> values = new ArrayList<>();
+			long mask = bits == 64 ? -1L : (1L << bits) - 1L;
+			for (int i = 0; i < count; i++) {
+				values.add(r.nextLong() & mask);
+			}
+			values = new ArrayList<>(new LinkedHashSet<>(values));
+			ExternalUniquenessChecker<Long> checker = new ExternalUniquenessChecker<>(values, ExternalUniquenessChecker.MIN_MEMORY_BUDGET, directory);
+			assertTrue(checker.isUnique(Long::longValue, bits));
+
+			long a = values.get(10);
+			long b = values.get(values.size() - 10);
+			values.add(a);
+			values.add(b);
+			values.add(a);
+			Collections.shuffle(values, r);
+			assertFalse(checker.isUnique(Long::longValue, bits));
+			assertEquals(1, checker.duplicates(Long::longValue, bits, 1).length);
+			long[] expected = a < b ? new long[] {a, b} : new long[] {b, a};
+			assertArrayEquals(expected, checker.duplicates(Long::longValue, bits, 10));
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(0L, files.count());
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+}
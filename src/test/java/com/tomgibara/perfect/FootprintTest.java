@@ -0,0 +1,66 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.tomgibara.streams.StreamSerializer;
+
+public class FootprintTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testTotals() {
+		Footprint footprint = new Footprint(100, Arrays.asList(
+				new Footprint.Component("hasher", 400L, 0L),
+				new Footprint.Component("keys", 200L, 1000L)
+				));
+		assertEquals(600L, footprint.getHeapBytes());
+		assertEquals(1000L, footprint.getOffHeapBytes());
+		assertEquals(1600L, footprint.getTotalBytes());
+		assertEquals(128.0, footprint.getBitsPerKey(), 0.0);
+		Map<String, Number> metrics = footprint.toMetrics();
+		assertEquals(Arrays.asList("keys", "heapBytes", "offHeapBytes", "totalBytes", "bitsPerKey", "hasher.heapBytes", "hasher.offHeapBytes", "keys.heapBytes", "keys.offHeapBytes"), new ArrayList<>(metrics.keySet()));
+		assertEquals(1000L, metrics.get("keys.offHeapBytes"));
+		assertEquals(0.0, new Footprint(0, Arrays.asList()).getBitsPerKey(), 0.0);
+	}
+
+	@Test
+	public void testMinimal() {
+		List<String> values = TestValues.values(10000);
+		Perfect<String> perfect = Perfect.over(values).using(3, new Random(0L)).perfect(ser);
+		Minimal<String> bmz = perfect.minimized();
+		Footprint footprint = bmz.footprint();
+		assertEquals(values.size(), footprint.getKeys());
+		assertEquals(1, footprint.getComponents().size());
+		// g stores an int for each of at least n vertices
+		assertTrue(footprint.getBitsPerKey() >= 32.0);
+		bmz.getStore();
+		footprint = bmz.footprint();
+		assertEquals(3, footprint.getComponents().size());
+		assertTrue(footprint.toMetrics().containsKey("keys.heapBytes"));
+
+		Footprint bdz = perfect.minimizedWithBDZ().footprint();
+		assertTrue(bdz.getBitsPerKey() < 4.0);
+	}
+
+	@Test
+	public void testSetAndMap() {
+		List<String> values = TestValues.values(10000);
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect(ser).minimized();
+		Footprint set = minimal.newSet().footprint();
+		assertEquals(values.size(), set.getKeys());
+		assertTrue(set.getBitsPerKey() >= 1.0 && set.getBitsPerKey() < 2.0);
+		Footprint map = minimal.mapsToTypedStorage(long.class, 0L).newMap().footprint();
+		assertTrue(map.getBitsPerKey() >= 64.0 && map.getBitsPerKey() < 65.0);
+	}
+
+}
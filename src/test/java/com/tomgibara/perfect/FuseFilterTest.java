@@ -0,0 +1,83 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.tomgibara.streams.StreamSerializer;
+
+public class FuseFilterTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+
+	@Test
+	public void testFilter() {
+		int size = 100000;
+		FuseFilter<String> filter = FuseFilter.build(Perfect.over(values("in", size)), ser);
+		for (String value : values("in", size)) {
+			assertTrue(filter.mightContain(value));
+		}
+		int positives = 0;
+		for (String value : values("out", size)) {
+			if (filter.mightContain(value)) positives++;
+		}
+		double rate = positives / (double) size;
+		assertTrue("false positive rate " + rate, rate < 0.006);
+		double bitsPerKey = filter.getBitCount() / (double) size;
+		assertTrue("bits per key " + bitsPerKey, bitsPerKey < 10.0);
+	}
+
+	@Test
+	public void testSmall() {
+		for (int size = 0; size < 50; size++) {
+			FuseFilter<String> filter = FuseFilter.build(Perfect.over(values("in", size)), ser);
+			for (String value : values("in", size)) {
+				assertTrue(filter.mightContain(value));
+			}
+		}
+	}
+
+	@Test
+	public void testDuplicateHashes() {
+		List<String> values = values("in", 1000);
+		FuseFilter<String> filter = FuseFilter.build(Perfect.over(values), s -> s.length());
+		for (String value : values) {
+			assertTrue(filter.mightContain(value));
+		}
+	}
+
+	@Test
+	public void testSerialization() throws IOException {
+		List<String> values = values("in", 10000);
+		FuseFilter<String> filter = FuseFilter.build(Perfect.over(values), ser);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		filter.writeTo(out);
+		FuseFilter<String> read = FuseFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), ser);
+		assertEquals(filter.getBitCount(), read.getBitCount());
+		for (String value : values) {
+			assertTrue(read.mightContain(value));
+		}
+		for (String value : values("out", 10000)) {
+			assertEquals(filter.mightContain(value), read.mightContain(value));
+		}
+	}
+
+	private static List<String> values(String prefix, int size) {
+		if (size == 0) return Collections.emptyList();
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			values.add(prefix + i);
+		}
+		return values;
+	}
+
+}
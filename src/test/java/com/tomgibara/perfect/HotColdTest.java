@@ -0,0 +1,54 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.streams.StreamSerializer;
+
+public class HotColdTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testHotValuesFirst() {
+		List<String> values = TestValues.values(10000);
+		// values ending in 7 are hot
+		int hotCount = values.size() / 10;
+		Perfect<String> perfect = Perfect.over(values).using(3, new Random(0L)).perfect(ser);
+		for (int count : new int[] {0, 1, hotCount, values.size()}) {
+			Minimal<String> minimal = perfect.minimizedWithProfile(s -> s.endsWith("7") ? 100 : 1, count);
+			Hasher<String> hasher = minimal.getHasher();
+			assertEquals(values.size(), hasher.getSize().asInt());
+			TestValues.assertDistinct(hasher, values, values.size());
+			if (count == hotCount) {
+				for (String value : values) {
+					assertEquals(value.endsWith("7"), hasher.intHashValue(value) < hotCount);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMap() {
+		List<String> values = TestValues.values(1000);
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect(ser).minimizedWithProfile(String::length, 10);
+		MinimalMap<String, Integer> map = minimal.mapsToTypedStorage(int.class, 0).newMap();
+		for (String value : values) {
+			map.put(value, value.length());
+		}
+		for (String value : values) {
+			assertEquals(value.length(), map.get(value).intValue());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHotCountTooLarge() {
+		Perfect.over(TestValues.values(10)).using(3, new Random(0L)).perfect(ser).minimizedWithProfile(String::length, 11);
+	}
+
+}
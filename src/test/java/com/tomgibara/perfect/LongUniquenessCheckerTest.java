@@ -0,0 +1,87 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.tomgibara.perfect.ConstructionObserver.Phase;
+
+public class LongUniquenessCheckerTest {
+
+	@Test
+	public void testSorted() {
+		testChecker(64, 1 << 20);
+	}
+
+	@Test
+	public void testPartitioned() {
+		testChecker(40, 100);
+		testChecker(64, 100);
+	}
+
+	@Test
+	public void testBitmap() {
+		testChecker(16, 1 << 20);
+	}
+
+	@Test
+	public void testLimited() {
+		List<Long> values = new ArrayList<>();
+		for (long i = 0; i < 10000; i++) {
+			values.add(i * 0x9e3779b97f4a7c15L);
+		}
+		// a tiny budget does not reduce partitions below the floor
+		ConstructionContext budgeted = ConstructionContext.NONE.withLimits(ConstructionLimits.none().withMemoryBudget(0L));
+		assertTrue(new LongUniquenessChecker<>(values, false, budgeted, Phase.PERFECTION_CHECK).isUnique(Long::longValue, 64));
+		// nor does it permit a bitmap that exceeds it
+		assertTrue(new LongUniquenessChecker<>(values, false, budgeted, Phase.PERFECTION_CHECK).isUnique(v -> v.longValue() >>> 44, 20));
+
+		// limits are checked before each partition
+		AtomicInteger checks = new AtomicInteger();
+		ConstructionContext cancelled = budgeted.withLimits(budgeted.limits.withCancellation(() -> checks.incrementAndGet() > 1));
+		try {
+			new LongUniquenessChecker<>(values, false, cancelled, Phase.PERFECTION_CHECK).isUnique(Long::longValue, 64);
+			fail();
+		} catch (PerfectionException e) {
+			ConstructionProgress progress = e.getProgress().get();
+			assertEquals(ConstructionProgress.Reason.CANCELLED, progress.getReason());
+			assertEquals(Phase.PERFECTION_CHECK, progress.getPhase());
+			assertEquals(values.size(), progress.getProcessed());
+		}
+	}
+
+	private void testChecker(int bits, int maxPartitionSize) {
+		for (boolean parallel : new boolean[] {false, true}) {
+			Random r = new Random(0L);
+			List<Long> values = new ArrayList<>();
+			long mask = bits == 64 ? -1L : (1L << bits) - 1L;
+			for (int i = 0; i < 10000; i++) {
+				values.add(r.nextLong() & mask);
+			}
+			values = new ArrayList<>(new LinkedHashSet<>(values));
+			LongUniquenessChecker<Long> checker = new LongUniquenessChecker<>(values, parallel, maxPartitionSize);
+			assertTrue(checker.isUnique(Long::longValue, bits));
+
+			long a = values.get(10);
+			long b = values.get(20);
+			values.add(a);
+			values.add(b);
+			values.add(a);
+			assertFalse(checker.isUnique(Long::longValue, bits));
+			assertEquals(1, checker.duplicates(Long::longValue, bits, 1).length);
+			long[] expected = a < b ? new long[] {a, b} : new long[] {b, a};
+			assertArrayEquals(expected, checker.duplicates(Long::longValue, bits, 10));
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.streams.StreamSerializer;
+
+public class MinimalCacheTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testCache() throws IOException {
+		Path directory = Files.createTempDirectory("perfect-cache");
+		try {
+			MinimalCache cache = MinimalCache.in(directory, 1L << 20);
+			List<String> values = words("word", 1000);
+			Minimal<String> built = cache.minimized(Perfect.over(values), ser);
+			assertEquals(1, files(directory).size());
+
+			Minimal<String> loaded = cache.minimized(Perfect.over(new ArrayList<>(values)), ser);
+			assertEquals(1, files(directory).size());
+			Hasher<String> b = built.getHasher();
+			Hasher<String> l = loaded.getHasher();
+			for (String value : values) {
+				assertEquals(b.intHashValue(value), l.intHashValue(value));
+				assertEquals(value, loaded.getStore().get(l.intHashValue(value)));
+			}
+
+			// different parameters yield a different entry
+			cache.minimized(Perfect.over(values), ser, 1L, 3, 100, 1.5);
+			assertEquals(2, files(directory).size());
+
+			// corrupt entries are rebuilt
+			for (Path path : files(directory)) {
+				Files.write(path, new byte[] {1, 2, 3});
+			}
+			Minimal<String> rebuilt = cache.minimized(Perfect.over(values), ser);
+			for (String value : values) {
+				assertEquals(b.intHashValue(value), rebuilt.getHasher().intHashValue(value));
+			}
+
+			cache.clear();
+			assertTrue(files(directory).isEmpty());
+		} finally {
+			MinimalCache.in(directory, 0L).clear();
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		Path directory = Files.createTempDirectory("perfect-cache");
+		try {
+			// room for only one entry of this size
+			MinimalCache cache = MinimalCache.in(directory, 6000L);
+			cache.minimized(Perfect.over(words("a", 1000)), ser);
+			cache.minimized(Perfect.over(words("b", 1000)), ser);
+			assertEquals(1, files(directory).size());
+		} finally {
+			MinimalCache.in(directory, 0L).clear();
+			Files.delete(directory);
+		}
+	}
+
+	private static List<String> words(String prefix, int count) {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			words.add(prefix + i);
+		}
+		return words;
+	}
+
+	private static List<Path> files(Path directory) throws IOException {
+		try (Stream<Path> stream = Files.list(directory)) {
+			return stream.collect(Collectors.toList());
+		}
+	}
+
+}
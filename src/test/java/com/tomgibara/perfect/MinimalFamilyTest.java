@@ -0,0 +1,83 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.streams.StreamSerializer;
+
+public class MinimalFamilyTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testFamily() {
+		Map<Integer, List<String>> domains = domains(200);
+		MinimalFamily<Integer, String> family = MinimalFamily.build(domains, ser);
+		assertEquals(domains.keySet(), family.getDomains());
+		int total = 0;
+		for (Map.Entry<Integer, List<String>> entry : domains.entrySet()) {
+			Integer domain = entry.getKey();
+			List<String> values = entry.getValue();
+			total += values.size();
+			assertEquals(values.size(), family.size(domain));
+			Hasher<String> hasher = family.hasher(domain);
+			BitSet hashes = new BitSet();
+			for (String value : values) {
+				int index = hasher.intHashValue(value);
+				assertTrue(index >= 0 && index < values.size());
+				hashes.set(index);
+				assertEquals(index, family.indexOf(domain, value));
+				assertEquals(value, family.get(domain, index));
+			}
+			assertEquals(values.size(), hashes.cardinality());
+			assertEquals(-1, family.indexOf(domain, "absent"));
+			Minimal<String> minimal = family.minimal(domain);
+			assertEquals(values.size(), minimal.getHasher().getSize().asInt());
+			MinimalSet<String> set = minimal.newSet();
+			set.fill();
+			assertTrue(set.containsAll(values));
+			assertEquals(values.get(0), minimal.getStore().get(hasher.intHashValue(values.get(0))));
+		}
+		assertEquals(total, family.getKeyArenaSize());
+	}
+
+	@Test
+	public void testParallel() {
+		Map<Integer, List<String>> domains = domains(100);
+		MinimalFamily<Integer, String> sequential = MinimalFamily.build(domains, ser, 1L, 3, 100, 1.15, false);
+		MinimalFamily<Integer, String> parallel = MinimalFamily.build(domains, ser, 1L, 3, 100, 1.15, true);
+		for (Map.Entry<Integer, List<String>> entry : domains.entrySet()) {
+			for (String value : entry.getValue()) {
+				assertEquals(sequential.indexOf(entry.getKey(), value), parallel.indexOf(entry.getKey(), value));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownDomain() {
+		MinimalFamily.build(domains(3), ser).hasher(-1);
+	}
+
+	private static Map<Integer, List<String>> domains(int count) {
+		Map<Integer, List<String>> domains = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			List<String> values = new ArrayList<>();
+			int size = 1 + (i * 37) % 300;
+			for (int j = 0; j < size; j++) {
+				values.add("field-" + i + "-" + j);
+			}
+			domains.put(i, values);
+		}
+		return domains;
+	}
+
+}
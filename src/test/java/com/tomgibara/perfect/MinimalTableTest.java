@@ -0,0 +1,84 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MinimalTableTest {
+
+	@Test
+	public void testTable() {
+		String[] animals = { "ostrich", "dog", "snail", "centipede" };
+		Minimal<String> minimal = Perfect.over(animals).usingDefaults().maybePerfect().get().minimized();
+		MinimalTable<String> table = minimal.newTable(int.class, long.class, double.class, boolean.class);
+		assertEquals(4, table.rowCount());
+		assertEquals(4, table.columnCount());
+		assertEquals(-1, table.indexOf("whippet"));
+		try {
+			table.rowOf("whippet");
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+
+		int dog = table.rowOf("dog");
+		assertEquals("dog", table.keyAt(dog));
+		table.setInt(dog, 0, 4);
+		table.addLong(dog, 1, 10L);
+		table.addLong(dog, 1, 5L);
+		table.setDouble(dog, 2, 0.5);
+		table.setBoolean(dog, 3, true);
+		assertEquals(4, table.getInt(dog, 0));
+		assertEquals(15L, table.getLong(dog, 1));
+		assertEquals(0.5, table.getDouble(dog, 2), 0.0);
+		assertTrue(table.getBoolean(dog, 3));
+		try {
+			table.getInt(dog, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+
+		table.fillInt(0, 2);
+		table.applyInt(0, i -> i * 3);
+		assertEquals(24L, table.sumLong(0));
+		assertEquals(15L, table.sumLong(1));
+		assertEquals(1, table.countTrue(3));
+
+		Set<String> keys = new HashSet<>();
+		for (MinimalTable<String>.Cursor cursor = table.cursor(); cursor.next(); ) {
+			keys.add(cursor.key());
+			assertEquals(6, cursor.getInt(0));
+			assertEquals(cursor.key().equals("dog"), cursor.getBoolean(3));
+		}
+		assertEquals(4, keys.size());
+	}
+
+	@Test
+	public void testTableMutability() {
+		Minimal<String> minimal = Perfect.over("black", "white").usingDefaults().maybePerfect().get().minimized();
+		MinimalTable<String> table = minimal.newTable(int.class);
+		MinimalTable<String> view = table.immutableView();
+		int black = table.rowOf("black");
+		table.setInt(black, 0, 7);
+		assertEquals(7, view.getInt(black, 0));
+		assertFalse(view.isMutable());
+		try {
+			view.setInt(black, 0, 8);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		MinimalTable<String> copy = table.mutableCopy();
+		copy.clear();
+		assertEquals(7, table.getInt(black, 0));
+		assertEquals(0, copy.getInt(black, 0));
+	}
+
+}
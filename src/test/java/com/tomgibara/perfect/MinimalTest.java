@@ -1,12 +1,21 @@
 package com.tomgibara.perfect;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.IntFunction;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.tomgibara.hashing.Hasher;
 import com.tomgibara.permute.Permutation;
 import com.tomgibara.permute.Permute;
+import com.tomgibara.storage.Store;
 
 public class MinimalTest {
 
@@ -21,4 +30,42 @@ public class MinimalTest {
 			Assert.assertEquals(animals[i], image.apply(i));
 		}
 	}
+
+	@Test
+	public void testConcurrentPopulation() throws Exception {
+		List<String> values = TestValues.values(100000);
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect((s, w) -> w.writeChars(s)).minimized();
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch latch = new CountDownLatch(1);
+			List<Future<Store<String>>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> { latch.await(); return minimal.getStore(); }));
+			}
+			latch.countDown();
+			Store<String> store = futures.get(0).get();
+			for (Future<Store<String>> future : futures) {
+				Assert.assertSame(store, future.get());
+			}
+			Hasher<String> hasher = minimal.getHasher();
+			for (String value : values) {
+				Assert.assertEquals(value, store.get(hasher.intHashValue(value)));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testStoreAfterPermutation() {
+		List<String> values = TestValues.values(100000);
+		Minimal<String> minimal = Perfect.over(values).using(3, new Random(0L)).perfect((s, w) -> w.writeChars(s)).minimized();
+		Assert.assertNotNull(minimal.getPermutation());
+		Store<String> store = minimal.getStore();
+		Hasher<String> hasher = minimal.getHasher();
+		for (String value : values) {
+			Assert.assertEquals(value, store.get(hasher.intHashValue(value)));
+		}
+	}
 }
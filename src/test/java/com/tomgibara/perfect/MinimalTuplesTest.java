@@ -0,0 +1,74 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MinimalTuplesTest {
+
+	@Test
+	public void testPairs() {
+		int size = 20000;
+		int[] tenants = new int[size];
+		long[] items = new long[size];
+		Random r = new Random(0L);
+		for (int i = 0; i < size; i++) {
+			tenants[i] = i % 37 - 10;
+			items[i] = r.nextLong();
+		}
+		MinimalTuples tuples = MinimalTuples.over(tenants, items);
+		assertEquals(size, tuples.size());
+		assertEquals(2, tuples.arity());
+		BitSet hashes = new BitSet();
+		for (int i = 0; i < size; i++) {
+			int index = tuples.indexOf(tenants[i], items[i]);
+			assertTrue(index >= 0 && index < size);
+			hashes.set(index);
+			assertEquals(tenants[i], tuples.get(0, index));
+			assertEquals(items[i], tuples.get(1, index));
+		}
+		assertEquals(size, hashes.cardinality());
+		assertEquals(-1, tuples.indexOf(tenants[0], items[0] + 1));
+		assertEquals(-1, tuples.indexOf(100, items[0]));
+	}
+
+	@Test
+	public void testTriples() {
+		int size = 1000;
+		long[] a = new long[size];
+		long[] b = new long[size];
+		long[] c = new long[size];
+		for (int i = 0; i < size; i++) {
+			a[i] = i / 100;
+			b[i] = i / 10 % 10;
+			c[i] = i % 10;
+		}
+		MinimalTuples tuples = MinimalTuples.over(a, b, c);
+		BitSet hashes = new BitSet();
+		for (int i = 0; i < size; i++) {
+			hashes.set(tuples.indexOf(a[i], b[i], c[i]));
+		}
+		assertEquals(size, hashes.cardinality());
+		assertEquals(-1, tuples.indexOf(10, 0, 0));
+	}
+
+	@Test(expected = PerfectionException.class)
+	public void testDuplicates() {
+		MinimalTuples.over(new int[] {1, 2, 1}, new int[] {3, 4, 3});
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testArity() {
+		MinimalTuples.over(new int[] {1}, new int[] {2}).indexOf(1, 2, 3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedColumns() {
+		MinimalTuples.over(new long[] {1, 2}, new long[] {3});
+	}
+
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -139,6 +140,27 @@ public class PerfectTest {
 		}
 	}
 
+	@Test
+	public void testStrategies() {
+		Random r = new Random(0L);
+		List<String> list = largeList(5000, 1000000, r);
+		Perfect<String> perfect = Perfect.over(list).using(3, r).perfect((s, w) -> w.writeChars(s));
+		MinimizationStrategy[] strategies = {
+				MinimizationStrategy.minimumMemory(),
+				MinimizationStrategy.fastestBuild(),
+				MinimizationStrategy.boundedTime(Duration.ofMinutes(1)),
+		};
+		for (MinimizationStrategy strategy : strategies) {
+			Minimal<String> minimal = perfect.minimized(strategy);
+			confirmMinimal(minimal, list);
+			MinimizationParameters params = minimal.getParameters().get();
+			assertTrue(params.getC() >= 1.0);
+			assertTrue(params.getAttempts() >= 1);
+		}
+		assertTrue(perfect.minimized(MinimizationStrategy.fastestBuild()).getParameters().get().getC() >= 2.0);
+		assertEquals(1.15, perfect.minimizedWithBMZ(100, 1.15).getParameters().get().getC(), 0.0);
+	}
+
 	private List<String> largeList(int size, int range, Random r) {
 		String[] strs = new String[size];
 		for (int i = 0; i < strs.length; i++) {
@@ -1,12 +1,18 @@
 package com.tomgibara.perfect;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.junit.Test;
 
+import com.tomgibara.hashing.HashCode;
 import com.tomgibara.hashing.HashSize;
 import com.tomgibara.hashing.Hasher;
 import com.tomgibara.hashing.Hashing;
@@ -57,4 +63,87 @@ public class PerfectionTest {
 			assertFalse( Perfect.over(store.asList()).isPerfect(h) );
 		}
 	}
+
+	@Test
+	public void testParallel() {
+		Hasher<Integer> compact = Hashing.<Integer>objectHasher().sized(HashSize.SHORT_SIZE);
+		assertTrue( Perfect.over(range(0, 1 << PerfectDomain.COMPACT_BIT_CUTOFF)).parallel().isPerfect(compact) );
+		assertFalse( Perfect.over(range(0, (1 << PerfectDomain.COMPACT_BIT_CUTOFF) + 1)).parallel().isPerfect(compact) );
+
+		Hasher<Integer> wide = Hashing.<Integer>objectHasher();
+		List<Integer> values = range(0, 1000000);
+		assertTrue( Perfect.over(values).parallel().isPerfect(wide) );
+		values.set(values.size() - 1, 0);
+		assertFalse( Perfect.over(values).parallel().isPerfect(wide) );
+	}
+
+	@Test
+	public void testSinglePass() {
+		List<Integer> values = range(0, 100000);
+		int[] scans = {0};
+		Iterable<Integer> iterable = () -> { scans[0]++; return values.iterator(); };
+		Perfect<Integer> perfect = Perfect.over(iterable).using(5, new Random(0L)).perfectInSinglePass((v, s) -> s.writeInt(v));
+		assertEquals(1, scans[0]);
+		assertTrue( Perfect.over(values).isPerfect(perfect.getHasher()) );
+	}
+
+	@Test(expected = PerfectionException.class)
+	public void testSinglePassNotInjective() {
+		Perfect.over(range(0, 1000)).usingDefaults().perfectInSinglePass((v, s) -> s.writeInt(v & 0xff));
+	}
+
+	@Test
+	public void testSampleRejection() {
+		List<Integer> values = range(0, 100000);
+		Hasher<Integer> narrow = new FunctionHasher(HashSize.SHORT_SIZE, v -> Digests.mix(v) >>> 48);
+		int[] iterated = {0};
+		Iterable<Integer> iterable = () -> values.stream().peek(v -> iterated[0]++).iterator();
+		assertFalse( Perfect.over(iterable, values.size()).usingDefaults().maybePerfect(narrow).isPresent() );
+		// the hash is rejected from a sample, without a pass over the whole domain
+		assertTrue(iterated[0] < values.size());
+	}
+
+	@Test
+	public void testSampleAcceptance() {
+		List<Integer> values = range(0, 300000);
+		Hasher<Integer> wide = new FunctionHasher(HashSize.fromLong(1L << 32), v -> v & 0xffffffffL);
+		assertTrue( Perfect.over(values).usingDefaults().maybePerfect(wide).isPresent() );
+	}
+
+	private static List<Integer> range(int from, int to) {
+		return IntStream.range(from, to).boxed().collect(Collectors.toList());
+	}
+
+	private static final class FunctionHasher implements Hasher<Integer> {
+
+		private final HashSize size;
+		private final ToLongFunction<Integer> function;
+
+		FunctionHasher(HashSize size, ToLongFunction<Integer> function) {
+			this.size = size;
+			this.function = function;
+		}
+
+		@Override
+		public HashSize getSize() {
+			return size;
+		}
+
+		@Override
+		public HashCode hash(Integer value) {
+			return HashCode.fromLong(longHashValue(value));
+		}
+
+		@Override
+		public long longHashValue(Integer value) {
+			return function.applyAsLong(value);
+		}
+
+		@Override
+		public int intHashValue(Integer value) {
+			return (int) longHashValue(value);
+		}
+
+	}
+
 }
@@ -0,0 +1,66 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.streams.StreamSerializer;
+
+public class RangeReducedTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeChars(s);
+
+	@Test
+	public void testRangeReduced() {
+		for (double loadFactor : new double[] {1.2, 1.5, 2.0}) {
+			List<String> values = TestValues.values(10000);
+			Perfect<String> perfect = Perfect.over(values).using(3, new Random(0L)).perfect(ser);
+			RangeReduced<String> reduced = perfect.rangeReduced(loadFactor);
+			int range = reduced.getRange();
+			assertEquals((int) Math.ceil(values.size() * loadFactor), range);
+			Hasher<String> hasher = reduced.getHasher();
+			TestValues.assertDistinct(hasher, values, range);
+		}
+	}
+
+	@Test
+	public void testLargeDomain() {
+		List<String> values = TestValues.values(1 << 20);
+		Perfect<String> perfect = Perfect.over(values).using(3, new Random(0L)).perfect(ser);
+		RangeReduced<String> reduced = perfect.rangeReduced(1.2);
+		int range = reduced.getRange();
+		Hasher<String> hasher = reduced.getHasher();
+		TestValues.assertDistinct(hasher, values, range);
+	}
+
+	@Test
+	public void testSet() {
+		List<String> values = TestValues.values(1000);
+		RangeReduced<String> reduced = Perfect.over(values).using(3, new Random(0L)).perfect(ser).rangeReduced(1.5);
+		MinimalSet<String> set = reduced.newSet();
+		assertTrue(set.isEmpty());
+		set.add(values.get(0));
+		assertTrue(set.contains(values.get(0)));
+		assertFalse(set.contains(values.get(1)));
+		assertFalse(set.contains("absent"));
+		assertFalse(set.isFull());
+		set.fill();
+		assertTrue(set.isFull());
+		assertEquals(values.size(), set.size());
+		assertTrue(set.containsAll(values));
+		set.remove(values.get(0));
+		assertEquals(values.size() - 1, set.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLoadFactor() {
+		Perfect.over(TestValues.values(10)).using(3, new Random(0L)).perfect(ser).rangeReduced(1.1);
+	}
+
+}
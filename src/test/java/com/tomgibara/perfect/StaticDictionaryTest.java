@@ -0,0 +1,63 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaticDictionaryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			keys.add("key" + i);
+		}
+		Path path = folder.getRoot().toPath().resolve("dictionary.psd");
+		StaticDictionary.write(path, Perfect.over(keys), StaticDictionaryTest::value);
+		StaticDictionary dictionary = StaticDictionary.open(path);
+		assertEquals(keys.size(), dictionary.size());
+		for (String key : keys) {
+			ByteBuffer value = dictionary.get(key);
+			byte[] bytes = new byte[value.remaining()];
+			value.get(bytes);
+			assertEquals(new String(value(key), StandardCharsets.UTF_8), new String(bytes, StandardCharsets.UTF_8));
+			assertTrue(value.isReadOnly());
+			assertTrue(dictionary.containsKey(key.getBytes(StandardCharsets.UTF_8)));
+		}
+		assertNull(dictionary.get("absent"));
+		assertFalse(dictionary.containsKey(new byte[0]));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFile() throws IOException {
+		Path path = folder.newFile("invalid.psd").toPath();
+		Files.write(path, new byte[64]);
+		StaticDictionary.open(path);
+	}
+
+	// values of varying length, including empty values
+	private static byte[] value(String key) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < key.length() % 7; i++) {
+			sb.append(key);
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
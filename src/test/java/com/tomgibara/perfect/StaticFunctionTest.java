@@ -0,0 +1,84 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.tomgibara.streams.StreamSerializer;
+
+public class StaticFunctionTest {
+
+	private static final StreamSerializer<String> ser = (s, w) -> w.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+
+	@Test
+	public void testFunction() {
+		int size = 100000;
+		List<String> values = TestValues.values(size);
+		StaticFunction<String> function = StaticFunction.build(Perfect.over(values), ser, StaticFunctionTest::image, 5);
+		assertEquals(5, function.getBits());
+		for (String value : values) {
+			assertEquals(image(value), function.get(value));
+		}
+		double bitsPerKey = function.getBitCount() / (double) size;
+		assertTrue("bits per key " + bitsPerKey, bitsPerKey < 6.0);
+	}
+
+	@Test
+	public void testBits() {
+		List<String> values = TestValues.values(1000);
+		for (int bits = 1; bits <= 32; bits++) {
+			int b = bits;
+			StaticFunction<String> function = StaticFunction.build(Perfect.over(values), ser, s -> s.hashCode() >>> (32 - b), bits);
+			for (String value : values) {
+				assertEquals(value.hashCode() >>> (32 - b), function.get(value));
+			}
+		}
+	}
+
+	@Test
+	public void testSmall() {
+		for (int size = 0; size < 50; size++) {
+			List<String> values = TestValues.values(size);
+			StaticFunction<String> function = StaticFunction.build(Perfect.over(values), ser, StaticFunctionTest::image, 5);
+			for (String value : values) {
+				assertEquals(image(value), function.get(value));
+			}
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		List<String> values = TestValues.values(10000);
+		StaticFunction<String> function = StaticFunction.build(Perfect.over(values), ser, StaticFunctionTest::image, 5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		function.writeTo(out);
+		StaticFunction<String> read = StaticFunction.readFrom(new ByteArrayInputStream(out.toByteArray()), ser);
+		assertEquals(function.getBits(), read.getBits());
+		assertEquals(function.getBitCount(), read.getBitCount());
+		for (String value : values) {
+			assertEquals(image(value), read.get(value));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadUnrecognized() throws IOException {
+		StaticFunction.readFrom(new ByteArrayInputStream(new byte[16]), ser);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testImageTooLarge() {
+		StaticFunction.build(Perfect.over(TestValues.values(10)), ser, s -> 32, 5);
+	}
+
+	private static int image(String value) {
+		return value.length() & 31;
+	}
+
+}
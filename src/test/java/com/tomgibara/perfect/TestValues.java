@@ -0,0 +1,38 @@
+package com.tomgibara.perfect;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import com.tomgibara.hashing.Hasher;
+
+// domain values and assertions shared by tests
+final class TestValues {
+
+	// distinct strings of the form "value<i>"
+	static List<String> values(int size) {
+		List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add("value" + i);
+		}
+		return values;
+	}
+
+	// asserts that the hasher maps the values to distinct hash values less than range
+	static <T> void assertDistinct(Hasher<T> hasher, Collection<? extends T> values, int range) {
+		BitSet hashes = new BitSet();
+		for (T value : values) {
+			int hash = hasher.intHashValue(value);
+			assertTrue(hash >= 0 && hash < range);
+			assertFalse(hashes.get(hash));
+			hashes.set(hash);
+		}
+	}
+
+	private TestValues() { }
+
+}